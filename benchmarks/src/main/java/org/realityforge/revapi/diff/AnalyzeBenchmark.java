@@ -0,0 +1,86 @@
+package org.realityforge.revapi.diff;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.revapi.AnalysisResult;
+import org.revapi.Revapi;
+
+/**
+ * Measures the end-to-end analysis of generated api archives of increasing size, collecting the differences
+ * as the tool does. One in ten classes has an added, a removed and a changed method.
+ */
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx3g" )
+@State( Scope.Benchmark )
+public class AnalyzeBenchmark
+{
+  @Param( { "100", "1000", "4000" } )
+  public int classCount;
+  private Path _directory;
+  private Revapi _revapi;
+  private Comparison _comparison;
+
+  @Setup( Level.Trial )
+  public void setup()
+    throws Exception
+  {
+    _directory = Files.createTempDirectory( "analyze" );
+    final int changeCount = Math.max( 1, classCount / 10 );
+    new FixtureGenerator( 10, classCount, 10, changeCount, changeCount, changeCount ).generate( _directory );
+    _revapi = Revapi.builder()
+      .withAnalyzers( Extensions.ANALYZERS )
+      .withReporters( CollectorReporter.class )
+      .withTransforms( Extensions.TRANSFORMS )
+      .withFilters( Extensions.FILTERS )
+      .build();
+    _comparison = new Comparison();
+    _comparison.addOldApi( FixtureGenerator.getOldApi( _directory ).toString() );
+    _comparison.addNewApi( FixtureGenerator.getNewApi( _directory ).toString() );
+  }
+
+  @TearDown( Level.Trial )
+  public void tearDown()
+    throws Exception
+  {
+    FixtureGenerator.delete( _directory );
+  }
+
+  @Benchmark
+  public int analyze()
+    throws Exception
+  {
+    try ( final SpillingCollector collector = new SpillingCollector( Integer.MAX_VALUE, Long.MAX_VALUE ) )
+    {
+      final AnalysisResult result =
+        _revapi.analyze( _comparison.buildAnalysisContext( Collections.singletonMap( CollectorReporter.COLLECTOR_KEY,
+                                                                                     collector ) ) );
+      try
+      {
+        result.throwIfFailed();
+      }
+      finally
+      {
+        result.close();
+      }
+      return collector.getReportCount();
+    }
+  }
+}
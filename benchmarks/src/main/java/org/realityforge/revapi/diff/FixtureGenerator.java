@@ -0,0 +1,231 @@
+package org.realityforge.revapi.diff;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates a pair of old and new api archives with a controlled number of added, removed and changed methods
+ * so that benchmarks are reproducible offline. The classes are distributed between packages and the added,
+ * removed and changed methods are distributed between the classes. The entries of the archives are written in
+ * a fixed order with a fixed timestamp so that the same parameters produce the same archives.
+ */
+final class FixtureGenerator
+{
+  private final int _packageCount;
+  private final int _classCount;
+  private final int _methodCount;
+  private final int _addedCount;
+  private final int _removedCount;
+  private final int _changedCount;
+
+  /**
+   * @param packageCount the number of packages.
+   * @param classCount   the number of classes in each api.
+   * @param methodCount  the number of unchanged methods in each class.
+   * @param addedCount   the number of methods only present in the new api.
+   * @param removedCount the number of methods only present in the old api.
+   * @param changedCount the number of methods whose return type differs between the apis.
+   */
+  FixtureGenerator( final int packageCount,
+                    final int classCount,
+                    final int methodCount,
+                    final int addedCount,
+                    final int removedCount,
+                    final int changedCount )
+  {
+    _packageCount = packageCount;
+    _classCount = classCount;
+    _methodCount = methodCount;
+    _addedCount = addedCount;
+    _removedCount = removedCount;
+    _changedCount = changedCount;
+  }
+
+  /**
+   * Usage: FixtureGenerator directory packageCount classCount methodCount addedCount removedCount changedCount
+   */
+  public static void main( final String[] args )
+    throws IOException
+  {
+    if ( 7 != args.length )
+    {
+      System.err.println( "Usage: FixtureGenerator directory packageCount classCount methodCount " +
+                          "addedCount removedCount changedCount" );
+      System.exit( 1 );
+    }
+    final Path directory = Paths.get( args[ 0 ] );
+    new FixtureGenerator( Integer.parseInt( args[ 1 ] ),
+                          Integer.parseInt( args[ 2 ] ),
+                          Integer.parseInt( args[ 3 ] ),
+                          Integer.parseInt( args[ 4 ] ),
+                          Integer.parseInt( args[ 5 ] ),
+                          Integer.parseInt( args[ 6 ] ) ).generate( directory );
+    System.out.println( "Generated " + getOldApi( directory ) + " and " + getNewApi( directory ) );
+  }
+
+  @Nonnull
+  static Path getOldApi( @Nonnull final Path directory )
+  {
+    return directory.resolve( "old.jar" );
+  }
+
+  @Nonnull
+  static Path getNewApi( @Nonnull final Path directory )
+  {
+    return directory.resolve( "new.jar" );
+  }
+
+  /**
+   * Generate the old and new archives in the directory.
+   */
+  void generate( @Nonnull final Path directory )
+    throws IOException
+  {
+    Files.createDirectories( directory );
+    createJar( getOldApi( directory ), createSources( true ) );
+    createJar( getNewApi( directory ), createSources( false ) );
+  }
+
+  /**
+   * Return the source of each class keyed by the path of the source file.
+   */
+  @Nonnull
+  private Map<String, String> createSources( final boolean old )
+  {
+    final Map<String, String> sources = new TreeMap<>();
+    for ( int i = 0; i < _classCount; i++ )
+    {
+      final String packageName = "p" + ( i % _packageCount );
+      final StringBuilder sb = new StringBuilder();
+      sb.append( "package " ).append( packageName ).append( ";\n" );
+      sb.append( "public class C" ).append( i ).append( "\n{\n" );
+      for ( int j = 0; j < _methodCount; j++ )
+      {
+        sb.append( "  public int m" ).append( j ).append( "( final String value ) { return value.length(); }\n" );
+      }
+      appendMethods( sb, i, old ? 0 : _addedCount, "a", "int" );
+      appendMethods( sb, i, old ? _removedCount : 0, "r", "int" );
+      appendMethods( sb, i, _changedCount, "c", old ? "int" : "long" );
+      sb.append( "}\n" );
+      sources.put( packageName + "/C" + i + ".java", sb.toString() );
+    }
+    return sources;
+  }
+
+  /**
+   * Append the methods with the specified prefix that are assigned to the class.
+   * The methods are assigned to the classes in turn.
+   */
+  private void appendMethods( @Nonnull final StringBuilder sb,
+                              final int classIndex,
+                              final int count,
+                              @Nonnull final String prefix,
+                              @Nonnull final String returnType )
+  {
+    for ( int j = classIndex; j < count; j += _classCount )
+    {
+      sb.append( "  public " ).append( returnType ).append( ' ' ).append( prefix ).append( j )
+        .append( "() { return 0; }\n" );
+    }
+  }
+
+  private static void createJar( @Nonnull final Path jar, @Nonnull final Map<String, String> sources )
+    throws IOException
+  {
+    final Path directory = Files.createTempDirectory( "fixture" );
+    try
+    {
+      final Path sourceDirectory = directory.resolve( "src" );
+      final Path classDirectory = Files.createDirectories( directory.resolve( "classes" ) );
+      final List<File> files = new ArrayList<>();
+      for ( final Map.Entry<String, String> entry : sources.entrySet() )
+      {
+        final Path file = sourceDirectory.resolve( entry.getKey() );
+        Files.createDirectories( file.getParent() );
+        Files.write( file, entry.getValue().getBytes( StandardCharsets.UTF_8 ) );
+        files.add( file.toFile() );
+      }
+      final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+      if ( null == compiler )
+      {
+        throw new IOException( "A java compiler is required to generate fixtures" );
+      }
+      try ( final StandardJavaFileManager fileManager = compiler.getStandardFileManager( null, null, null ) )
+      {
+        final List<String> options = new ArrayList<>();
+        options.add( "-proc:none" );
+        options.add( "-d" );
+        options.add( classDirectory.toString() );
+        final boolean success =
+          compiler.getTask( null, fileManager, null, options, null, fileManager.getJavaFileObjectsFromFiles( files ) )
+            .call();
+        if ( !success )
+        {
+          throw new IOException( "Failed to compile fixture sources for " + jar );
+        }
+      }
+      writeJar( jar, classDirectory );
+    }
+    finally
+    {
+      delete( directory );
+    }
+  }
+
+  private static void writeJar( @Nonnull final Path jar, @Nonnull final Path classDirectory )
+    throws IOException
+  {
+    final List<Path> classFiles;
+    try ( final Stream<Path> stream = Files.walk( classDirectory ) )
+    {
+      classFiles = stream.filter( Files::isRegularFile ).sorted().collect( Collectors.toList() );
+    }
+    try ( final OutputStream output = Files.newOutputStream( jar );
+          final JarOutputStream jarOutput = new JarOutputStream( output ) )
+    {
+      for ( final Path classFile : classFiles )
+      {
+        final JarEntry entry = new JarEntry( classDirectory.relativize( classFile ).toString().replace( '\\', '/' ) );
+        entry.setTime( 0 );
+        jarOutput.putNextEntry( entry );
+        jarOutput.write( Files.readAllBytes( classFile ) );
+        jarOutput.closeEntry();
+      }
+    }
+  }
+
+  static void delete( @Nonnull final Path path )
+    throws IOException
+  {
+    if ( Files.exists( path ) )
+    {
+      final List<Path> paths;
+      try ( final Stream<Path> stream = Files.walk( path ) )
+      {
+        paths = stream.sorted( Comparator.reverseOrder() ).collect( Collectors.toList() );
+      }
+      for ( final Path p : paths )
+      {
+        Files.delete( p );
+      }
+    }
+  }
+}
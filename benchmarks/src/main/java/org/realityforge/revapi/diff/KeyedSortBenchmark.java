@@ -0,0 +1,91 @@
+package org.realityforge.revapi.diff;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.revapi.Difference;
+import org.revapi.Report;
+
+/**
+ * Compares sorting reports and their differences with keys computed once per element against
+ * comparators that compute the keys on every comparison, as the reports were originally sorted.
+ * The setup verifies that both approaches produce the same order.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx3g" )
+@State( Scope.Benchmark )
+public class KeyedSortBenchmark
+{
+  @Param( { "10000", "100000", "1000000" } )
+  public int differenceCount;
+  private List<Report> _reports;
+
+  @Setup( Level.Trial )
+  public void setup()
+  {
+    _reports = TestReports.generateLargeApi( differenceCount, 42 );
+    final List<Difference> keyed = new ArrayList<>();
+    keyedSort( keyed::addAll );
+    final List<Difference> compared = new ArrayList<>();
+    comparatorSort( compared::addAll );
+    if ( !keyed.equals( compared ) )
+    {
+      throw new IllegalStateException( "The keyed sort produced a different order" );
+    }
+  }
+
+  @Benchmark
+  public void keyedSort( final Blackhole blackhole )
+  {
+    keyedSort( blackhole::consume );
+  }
+
+  @Benchmark
+  public void comparatorSort( final Blackhole blackhole )
+  {
+    comparatorSort( blackhole::consume );
+  }
+
+  private void keyedSort( final Consumer<List<Difference>> consumer )
+  {
+    for ( final Report report : KeyedSort.sort( _reports, KeyedSortBenchmark::toReportKey ) )
+    {
+      consumer.accept( KeyedSort.sort( report.getDifferences(), Main::toDescriptor ) );
+    }
+  }
+
+  private void comparatorSort( final Consumer<List<Difference>> consumer )
+  {
+    final List<Report> reports = new ArrayList<>( _reports );
+    reports.sort( Comparator.comparing( KeyedSortBenchmark::toReportKey ) );
+    for ( final Report report : reports )
+    {
+      final List<Difference> differences = new ArrayList<>( report.getDifferences() );
+      differences.sort( ( d1, d2 ) -> Main.toDescriptor( d1 ).compareTo( Main.toDescriptor( d2 ) ) );
+      consumer.accept( differences );
+    }
+  }
+
+  private static String toReportKey( final Report report )
+  {
+    return report.getNewElement() + "-" + report.getOldElement();
+  }
+}
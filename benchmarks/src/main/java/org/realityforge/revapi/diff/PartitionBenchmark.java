@@ -0,0 +1,130 @@
+package org.realityforge.revapi.diff;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.revapi.AnalysisContext;
+import org.revapi.AnalysisResult;
+import org.revapi.Revapi;
+
+/**
+ * Measures the analysis of a large generated api split into partitions of classes that are analyzed concurrently,
+ * as the tool does when invoked with {@code --partition-by-package}. A partition count of one is the
+ * unpartitioned analysis. The speedup is bounded by the number of available processors.
+ */
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx3g" )
+@State( Scope.Benchmark )
+public class PartitionBenchmark
+{
+  @Param( { "1", "2", "4" } )
+  public int partitionCount;
+  private Path _directory;
+  private Comparison _comparison;
+
+  @Setup( Level.Trial )
+  public void setup()
+    throws Exception
+  {
+    _directory = Files.createTempDirectory( "partition" );
+    new FixtureGenerator( 16, 4000, 10, 400, 400, 400 ).generate( _directory );
+    _comparison = new Comparison();
+    _comparison.addOldApi( FixtureGenerator.getOldApi( _directory ).toString() );
+    _comparison.addNewApi( FixtureGenerator.getNewApi( _directory ).toString() );
+  }
+
+  @TearDown( Level.Trial )
+  public void tearDown()
+    throws Exception
+  {
+    FixtureGenerator.delete( _directory );
+  }
+
+  @Benchmark
+  public int analyze()
+    throws Exception
+  {
+    try ( final SpillingCollector collector = new SpillingCollector( Integer.MAX_VALUE, Long.MAX_VALUE ) )
+    {
+      final AnalysisContext context =
+        _comparison.buildAnalysisContext( Collections.singletonMap( CollectorReporter.COLLECTOR_KEY, collector ) );
+      final List<AnalysisContext> partitions =
+        partitionCount > 1 ? PackagePartitioner.partition( _comparison, context, partitionCount ) : null;
+      if ( null == partitions )
+      {
+        analyze( context );
+      }
+      else
+      {
+        final ExecutorService executor = Executors.newFixedThreadPool( partitions.size() );
+        try
+        {
+          final List<Future<?>> results = new ArrayList<>( partitions.size() );
+          for ( final AnalysisContext partition : partitions )
+          {
+            results.add( executor.submit( () -> {
+              analyze( partition );
+              return null;
+            } ) );
+          }
+          for ( final Future<?> result : results )
+          {
+            result.get();
+          }
+        }
+        finally
+        {
+          executor.shutdownNow();
+        }
+      }
+      collector.finish();
+      return collector.getReportCount();
+    }
+  }
+
+  /**
+   * Analyze the context with a new Revapi instance as instances must not be shared between threads.
+   */
+  private static void analyze( @Nonnull final AnalysisContext context )
+    throws Exception
+  {
+    final Revapi revapi = Revapi.builder()
+      .withAnalyzers( Extensions.ANALYZERS )
+      .withReporters( CollectorReporter.class )
+      .withTransforms( Extensions.TRANSFORMS )
+      .withFilters( Extensions.FILTERS )
+      .build();
+    final AnalysisResult result = revapi.analyze( context );
+    try
+    {
+      result.throwIfFailed();
+    }
+    finally
+    {
+      result.close();
+    }
+  }
+}
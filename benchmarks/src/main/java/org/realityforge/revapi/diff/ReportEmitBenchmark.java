@@ -0,0 +1,78 @@
+package org.realityforge.revapi.diff;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.revapi.Report;
+
+/**
+ * Measures writing the collected differences to a report in each format.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx3g" )
+@State( Scope.Benchmark )
+public class ReportEmitBenchmark
+{
+  @Param( { "10000", "100000" } )
+  public int differenceCount;
+  @Param( { "JSON", "NDJSON", "BINARY" } )
+  public String format;
+  private Path _directory;
+  private SpillingCollector _collector;
+
+  @Setup( Level.Trial )
+  public void setup()
+    throws Exception
+  {
+    _directory = Files.createTempDirectory( "emit" );
+    _collector = new SpillingCollector( Integer.MAX_VALUE, Long.MAX_VALUE );
+    for ( final Report report : TestReports.generateLargeApi( differenceCount, 42 ) )
+    {
+      _collector.add( report, report.getDifferences() );
+    }
+    _collector.finish();
+  }
+
+  @TearDown( Level.Trial )
+  public void tearDown()
+    throws Exception
+  {
+    _collector.close();
+    FixtureGenerator.delete( _directory );
+  }
+
+  @Benchmark
+  public long emit()
+    throws Exception
+  {
+    final Path path = _directory.resolve( "report" );
+    try ( final ReportWriter writer = ReportWriter.create( ReportFormat.valueOf( format ), path ) )
+    {
+      writer.writeStart();
+      _collector.forEach( record -> writer.writeDifference( record.getCode(),
+                                                            record.getDescription(),
+                                                            record.getNewElement(),
+                                                            record.getOldElement(),
+                                                            record.getClassification(),
+                                                            record.getAttachments() ) );
+      writer.writeEnd();
+    }
+    return Files.size( path );
+  }
+}
@@ -0,0 +1,56 @@
+package org.realityforge.revapi.diff;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.revapi.Report;
+
+/**
+ * Measures collecting the reports as they arrive from Revapi and iterating the differences in report order.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx3g" )
+@State( Scope.Benchmark )
+public class ReportOrderBenchmark
+{
+  @Param( { "10000", "100000", "1000000" } )
+  public int differenceCount;
+  private List<Report> _reports;
+
+  @Setup( Level.Trial )
+  public void setup()
+  {
+    _reports = TestReports.generateLargeApi( differenceCount, 42 );
+  }
+
+  @Benchmark
+  public int collect()
+    throws Exception
+  {
+    try ( final SpillingCollector collector = new SpillingCollector( Integer.MAX_VALUE, Long.MAX_VALUE ) )
+    {
+      for ( final Report report : _reports )
+      {
+        collector.add( report, report.getDifferences() );
+      }
+      collector.finish();
+      final int[] count = new int[ 1 ];
+      collector.forEach( record -> count[ 0 ]++ );
+      return count[ 0 ];
+    }
+  }
+}
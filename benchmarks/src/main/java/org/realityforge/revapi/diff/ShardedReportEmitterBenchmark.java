@@ -0,0 +1,118 @@
+package org.realityforge.revapi.diff;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.revapi.Report;
+
+/**
+ * Compares writing each difference sequentially with encoding shards of differences in parallel on the
+ * common fork-join pool. The parallelism of the pool defaults to one less than the number of processors and
+ * the scaling can be measured by overriding it, i.e. passing
+ * {@code -jvmArgsAppend "-Xmx3g -Djava.util.concurrent.ForkJoinPool.common.parallelism=4"} to JMH. The heap
+ * size must be repeated as the option replaces the arguments specified by the annotation.
+ * The setup verifies that both approaches write identical reports.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx3g" )
+@State( Scope.Benchmark )
+public class ShardedReportEmitterBenchmark
+{
+  @Param( { "100000", "1000000" } )
+  public int differenceCount;
+  @Param( { "JSON", "NDJSON" } )
+  public String format;
+  private Path _directory;
+  private SpillingCollector _collector;
+
+  @Setup( Level.Trial )
+  public void setup()
+    throws Exception
+  {
+    _directory = Files.createTempDirectory( "sharded" );
+    _collector = new SpillingCollector( Integer.MAX_VALUE, Long.MAX_VALUE );
+    for ( final Report report : TestReports.generateLargeApi( differenceCount, 42 ) )
+    {
+      _collector.add( report, report.getDifferences() );
+    }
+    _collector.finish();
+    if ( !Arrays.equals( Files.readAllBytes( write( false ) ), Files.readAllBytes( write( true ) ) ) )
+    {
+      throw new IllegalStateException( "The sharded report differs from the sequential report" );
+    }
+  }
+
+  @TearDown( Level.Trial )
+  public void tearDown()
+    throws Exception
+  {
+    _collector.close();
+    FixtureGenerator.delete( _directory );
+  }
+
+  @Benchmark
+  public long sequential()
+    throws Exception
+  {
+    return Files.size( write( false ) );
+  }
+
+  @Benchmark
+  public long sharded()
+    throws Exception
+  {
+    return Files.size( write( true ) );
+  }
+
+  private Path write( final boolean sharded )
+    throws IOException
+  {
+    final Path path = _directory.resolve( sharded ? "sharded" : "sequential" );
+    try ( final ReportWriter writer = ReportWriter.create( ReportFormat.valueOf( format ), path ) )
+    {
+      writer.writeStart();
+      final ReportWriter.ShardEncoder encoder = writer.getShardEncoder();
+      final ShardedReportEmitter emitter =
+        sharded && null != encoder ? new ShardedReportEmitter( encoder, new PhaseStats() ) : null;
+      _collector.forEach( record -> {
+        if ( null != emitter )
+        {
+          emitter.add( record );
+        }
+        else
+        {
+          writer.writeDifference( record.getCode(),
+                                  record.getDescription(),
+                                  record.getNewElement(),
+                                  record.getOldElement(),
+                                  record.getClassification(),
+                                  record.getAttachments() );
+        }
+      } );
+      if ( null != emitter )
+      {
+        emitter.finish();
+      }
+      writer.writeEnd();
+    }
+    return path;
+  }
+}
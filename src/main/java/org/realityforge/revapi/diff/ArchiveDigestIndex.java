@@ -0,0 +1,204 @@
+package org.realityforge.revapi.diff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+
+/**
+ * A persistent index of the digests of support archives keyed by the path, modification time and size of the file.
+ * Support archives rarely change between runs so the index avoids reading every support archive to compute
+ * the key of the result cache. The index is loaded on first use and rewritten atomically whenever new digests
+ * are added, retaining only the most recently used entries.
+ */
+final class ArchiveDigestIndex
+{
+  private static final Logger c_logger = Logger.getGlobal();
+  private static final int INDEX_MAGIC = 0x52564449;
+  private static final int DIGEST_SIZE = 32;
+  @Nonnull
+  private final Path _file;
+  private final int _maxEntries;
+  @Nonnull
+  private final Map<String, Entry> _entries = new HashMap<>();
+  private boolean _loaded;
+  private boolean _modified;
+
+  ArchiveDigestIndex( @Nonnull final Path file, final int maxEntries )
+  {
+    _file = Objects.requireNonNull( file );
+    _maxEntries = maxEntries;
+  }
+
+  /**
+   * Return the digest of the archive, using the digest from the index if the file is unchanged.
+   */
+  @Nonnull
+  synchronized byte[] getDigest( @Nonnull final LabeledFileArchive archive )
+    throws IOException
+  {
+    ensureLoaded();
+    final File file = archive.getFile();
+    final String path = file.getCanonicalPath();
+    final long lastModified = file.lastModified();
+    final long size = file.length();
+    final Entry entry = _entries.get( path );
+    if ( null != entry && entry._lastModified == lastModified && entry._size == size )
+    {
+      entry._lastUsed = System.currentTimeMillis();
+      archive.setDigest( entry._digest );
+      return entry._digest;
+    }
+    else
+    {
+      final byte[] digest = archive.getDigest();
+      _entries.put( path, new Entry( lastModified, size, System.currentTimeMillis(), digest ) );
+      _modified = true;
+      return digest;
+    }
+  }
+
+  /**
+   * Write the index if digests have been added since it was loaded.
+   * Failures are logged but otherwise ignored as the index is merely an optimization.
+   */
+  synchronized void saveIfModified()
+  {
+    if ( _modified )
+    {
+      try
+      {
+        save();
+        _modified = false;
+      }
+      catch ( final IOException e )
+      {
+        c_logger.log( Level.WARNING, "Warning: Unable to save archive index: " + e );
+      }
+    }
+  }
+
+  private void ensureLoaded()
+  {
+    if ( !_loaded )
+    {
+      _loaded = true;
+      try
+      {
+        load();
+      }
+      catch ( final IOException e )
+      {
+        _entries.clear();
+        c_logger.log( Level.WARNING, "Warning: Ignoring unreadable archive index " + _file + ": " + e );
+      }
+    }
+  }
+
+  private void load()
+    throws IOException
+  {
+    try ( final DataInputStream input = new DataInputStream( new BufferedInputStream( Files.newInputStream( _file ) ) ) )
+    {
+      if ( INDEX_MAGIC != input.readInt() )
+      {
+        return;
+      }
+      final int count = input.readInt();
+      for ( int i = 0; i < count; i++ )
+      {
+        final String path = input.readUTF();
+        final long lastModified = input.readLong();
+        final long size = input.readLong();
+        final long lastUsed = input.readLong();
+        final byte[] digest = new byte[ DIGEST_SIZE ];
+        input.readFully( digest );
+        _entries.put( path, new Entry( lastModified, size, lastUsed, digest ) );
+      }
+    }
+    catch ( final NoSuchFileException e )
+    {
+      // No index has been written yet
+    }
+  }
+
+  private void save()
+    throws IOException
+  {
+    final List<Map.Entry<String, Entry>> entries = new ArrayList<>( _entries.entrySet() );
+    if ( entries.size() > _maxEntries )
+    {
+      entries.sort( Comparator.comparingLong( ( Map.Entry<String, Entry> e ) -> e.getValue()._lastUsed ).reversed() );
+      for ( final Map.Entry<String, Entry> entry : entries.subList( _maxEntries, entries.size() ) )
+      {
+        _entries.remove( entry.getKey() );
+      }
+    }
+    final Path directory = _file.toAbsolutePath().getParent();
+    Files.createDirectories( directory );
+    final Path tmpFile = Files.createTempFile( directory, _file.getFileName().toString(), ".tmp" );
+    try
+    {
+      try ( final DataOutputStream output =
+              new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( tmpFile ) ) ) )
+      {
+        output.writeInt( INDEX_MAGIC );
+        output.writeInt( _entries.size() );
+        for ( final Map.Entry<String, Entry> e : _entries.entrySet() )
+        {
+          final Entry entry = e.getValue();
+          output.writeUTF( e.getKey() );
+          output.writeLong( entry._lastModified );
+          output.writeLong( entry._size );
+          output.writeLong( entry._lastUsed );
+          output.write( entry._digest );
+        }
+      }
+      try
+      {
+        Files.move( tmpFile, _file, StandardCopyOption.ATOMIC_MOVE );
+      }
+      catch ( final AtomicMoveNotSupportedException e )
+      {
+        Files.move( tmpFile, _file, StandardCopyOption.REPLACE_EXISTING );
+      }
+    }
+    finally
+    {
+      Files.deleteIfExists( tmpFile );
+    }
+  }
+
+  private static final class Entry
+  {
+    private final long _lastModified;
+    private final long _size;
+    private long _lastUsed;
+    @Nonnull
+    private final byte[] _digest;
+
+    Entry( final long lastModified, final long size, final long lastUsed, @Nonnull final byte[] digest )
+    {
+      _lastModified = lastModified;
+      _size = size;
+      _lastUsed = lastUsed;
+      _digest = digest;
+    }
+  }
+}
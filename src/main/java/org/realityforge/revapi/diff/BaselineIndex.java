@@ -0,0 +1,308 @@
+package org.realityforge.revapi.diff;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+
+/**
+ * A multiset of the differences in a baseline report used to determine which differences are new.
+ * The baseline is parsed as a stream and each difference is reduced to a 64-bit hash of the data
+ * that identifies the difference so the memory consumed is proportional to the number of differences
+ * rather than the size of the report. The description is excluded from the hash so that rewording
+ * a description does not cause a difference to be considered new.
+ */
+final class BaselineIndex
+{
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  /**
+   * Open addressing table of hashes. A hash of 0 marks an empty slot.
+   */
+  @Nonnull
+  private long[] _hashes = new long[ 1024 ];
+  /**
+   * The number of occurrences of the hash in the corresponding slot.
+   */
+  @Nonnull
+  private int[] _counts = new int[ 1024 ];
+  private int _size;
+  private int _remaining;
+
+  private BaselineIndex()
+  {
+  }
+
+  /**
+   * Load the differences from the baseline report.
+   *
+   * @throws IOException if the baseline can not be read or is not a valid report.
+   */
+  @Nonnull
+  static BaselineIndex load( @Nonnull final File file )
+    throws IOException
+  {
+    final BaselineIndex index = new BaselineIndex();
+    try ( final InputStream input = new FileInputStream( file );
+          final JsonParser parser = Json.createParser( input ) )
+    {
+      expect( parser, JsonParser.Event.START_ARRAY );
+      while ( true )
+      {
+        final JsonParser.Event event = parser.next();
+        if ( JsonParser.Event.END_ARRAY == event )
+        {
+          break;
+        }
+        else if ( JsonParser.Event.START_OBJECT != event )
+        {
+          throw new IOException( "Unexpected " + event + " in baseline report" );
+        }
+        index.add( parseDifference( parser ) );
+      }
+    }
+    catch ( final JsonException | IllegalStateException e )
+    {
+      throw new IOException( "Invalid baseline report: " + e.getMessage(), e );
+    }
+    return index;
+  }
+
+  /**
+   * Remove one occurrence of the difference described by the record from the index.
+   *
+   * @return true if the difference was present in the baseline.
+   */
+  boolean remove( @Nonnull final DifferenceRecord record )
+  {
+    final int slot = findSlot( hash( record.getCode(),
+                                     record.getNewElement(),
+                                     record.getOldElement(),
+                                     record.getClassification(),
+                                     record.getAttachments() ) );
+    if ( 0 != _hashes[ slot ] && 0 != _counts[ slot ] )
+    {
+      _counts[ slot ]--;
+      _remaining--;
+      return true;
+    }
+    else
+    {
+      return false;
+    }
+  }
+
+  /**
+   * Return the number of differences in the baseline that have not been removed.
+   */
+  int getRemainingCount()
+  {
+    return _remaining;
+  }
+
+  private void add( final long hash )
+  {
+    if ( ( _size + 1 ) * 2 > _hashes.length )
+    {
+      grow();
+    }
+    final int slot = findSlot( hash );
+    if ( 0 == _hashes[ slot ] )
+    {
+      _hashes[ slot ] = hash;
+      _size++;
+    }
+    _counts[ slot ]++;
+    _remaining++;
+  }
+
+  private int findSlot( final long hash )
+  {
+    final int mask = _hashes.length - 1;
+    int slot = (int) hash & mask;
+    while ( 0 != _hashes[ slot ] && hash != _hashes[ slot ] )
+    {
+      slot = ( slot + 1 ) & mask;
+    }
+    return slot;
+  }
+
+  private void grow()
+  {
+    final long[] hashes = _hashes;
+    final int[] counts = _counts;
+    _hashes = new long[ hashes.length * 2 ];
+    _counts = new int[ hashes.length * 2 ];
+    for ( int i = 0; i < hashes.length; i++ )
+    {
+      if ( 0 != hashes[ i ] )
+      {
+        final int slot = findSlot( hashes[ i ] );
+        _hashes[ slot ] = hashes[ i ];
+        _counts[ slot ] = counts[ i ];
+      }
+    }
+  }
+
+  private static long parseDifference( @Nonnull final JsonParser parser )
+    throws IOException
+  {
+    String code = null;
+    String newElement = null;
+    String oldElement = null;
+    String[] classification = new String[ 0 ];
+    String[] attachments = new String[ 0 ];
+    while ( true )
+    {
+      final JsonParser.Event event = parser.next();
+      if ( JsonParser.Event.END_OBJECT == event )
+      {
+        break;
+      }
+      final String key = parser.getString();
+      final JsonParser.Event valueEvent = parser.next();
+      if ( JsonParser.Event.START_OBJECT == valueEvent )
+      {
+        final String[] entries = parseEntries( parser );
+        if ( "classification".equals( key ) )
+        {
+          classification = entries;
+        }
+        else if ( "attachments".equals( key ) )
+        {
+          attachments = entries;
+        }
+      }
+      else if ( JsonParser.Event.VALUE_STRING == valueEvent )
+      {
+        final String value = parser.getString();
+        switch ( key )
+        {
+          case "code":
+            code = value;
+            break;
+          case "element":
+            newElement = value;
+            oldElement = value;
+            break;
+          case "newElement":
+            newElement = value;
+            break;
+          case "oldElement":
+            oldElement = value;
+            break;
+          default:
+            break;
+        }
+      }
+      else if ( JsonParser.Event.START_ARRAY == valueEvent )
+      {
+        throw new IOException( "Unexpected array value for key " + key + " in baseline report" );
+      }
+    }
+    if ( null == code )
+    {
+      throw new IOException( "Difference in baseline report is missing code" );
+    }
+    return hash( code, newElement, oldElement, classification, attachments );
+  }
+
+  /**
+   * Parse an object with string values into an array of alternating keys and values.
+   */
+  @Nonnull
+  private static String[] parseEntries( @Nonnull final JsonParser parser )
+    throws IOException
+  {
+    final List<String> entries = new ArrayList<>();
+    while ( true )
+    {
+      final JsonParser.Event event = parser.next();
+      if ( JsonParser.Event.END_OBJECT == event )
+      {
+        break;
+      }
+      entries.add( parser.getString() );
+      expect( parser, JsonParser.Event.VALUE_STRING );
+      entries.add( parser.getString() );
+    }
+    return entries.toArray( new String[ 0 ] );
+  }
+
+  private static void expect( @Nonnull final JsonParser parser, @Nonnull final JsonParser.Event expected )
+    throws IOException
+  {
+    final JsonParser.Event event = parser.next();
+    if ( expected != event )
+    {
+      throw new IOException( "Expected " + expected + " but found " + event + " in baseline report" );
+    }
+  }
+
+  private static long hash( @Nonnull final String code,
+                            @Nullable final String newElement,
+                            @Nullable final String oldElement,
+                            @Nonnull final String[] classification,
+                            @Nonnull final String[] attachments )
+  {
+    long hash = FNV_OFFSET_BASIS;
+    hash = hash( hash, code );
+    hash = hash( hash, newElement );
+    hash = hash( hash, oldElement );
+    hash = hash( hash, classification );
+    hash = hash( hash, attachments );
+    // Mix the bits so that the low bits used to select a slot are well distributed
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return 0 == hash ? 1 : hash;
+  }
+
+  private static long hash( final long hash, @Nonnull final String[] values )
+  {
+    long result = update( hash, values.length );
+    for ( final String value : values )
+    {
+      result = hash( result, value );
+    }
+    return result;
+  }
+
+  /**
+   * Add the string to the hash, prefixed by its length so that adjacent strings can not be confused.
+   * A null string is distinguished from an empty string by a length of -1.
+   */
+  private static long hash( final long hash, @Nullable final String value )
+  {
+    if ( null == value )
+    {
+      return update( hash, -1 );
+    }
+    long result = update( hash, value.length() );
+    for ( int i = 0; i < value.length(); i++ )
+    {
+      result = update( result, value.charAt( i ) );
+    }
+    return result;
+  }
+
+  private static long update( final long hash, final int value )
+  {
+    long result = hash;
+    for ( int i = 0; i < 32; i += 8 )
+    {
+      result ^= ( value >>> i ) & 0xFF;
+      result *= FNV_PRIME;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,145 @@
+package org.realityforge.revapi.diff;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * Loader for the manifest describing the comparisons performed in batch mode.
+ * The manifest is a json array of objects. The keys of each object mirror the command line options
+ * that describe a single comparison, namely "old-api", "old-api-support", "new-api", "new-api-support",
+ * "config-file", "output-file" and "baseline". The api keys accept either a string or an array of strings.
+ */
+final class BatchManifest
+{
+  private static final Logger c_logger = Logger.getGlobal();
+
+  private BatchManifest()
+  {
+  }
+
+  /**
+   * Load the comparisons from the manifest, returning null and logging an error if the manifest is invalid.
+   */
+  @Nullable
+  static List<Comparison> load( @Nonnull final File manifest, @Nullable final File defaultConfigFile )
+  {
+    final JsonArray entries;
+    try ( final InputStream input = new FileInputStream( manifest );
+          final JsonReader reader = Json.createReader( input ) )
+    {
+      entries = reader.readArray();
+    }
+    catch ( final IOException | JsonException e )
+    {
+      c_logger.log( Level.SEVERE, "Error: Unable to read batch manifest " + manifest + ": " + e.getMessage() );
+      return null;
+    }
+
+    final List<Comparison> comparisons = new ArrayList<>( entries.size() );
+    for ( int i = 0; i < entries.size(); i++ )
+    {
+      final JsonValue entry = entries.get( i );
+      if ( JsonValue.ValueType.OBJECT != entry.getValueType() )
+      {
+        c_logger.log( Level.SEVERE, "Error: Batch manifest entry " + i + " is not an object" );
+        return null;
+      }
+      final Comparison comparison = parseComparison( (JsonObject) entry );
+      if ( null == comparison )
+      {
+        c_logger.log( Level.SEVERE, "Error: Invalid batch manifest entry " + i );
+        return null;
+      }
+      comparison.setDefaultConfigFile( defaultConfigFile );
+      comparisons.add( comparison );
+    }
+    return comparisons;
+  }
+
+  @Nullable
+  private static Comparison parseComparison( @Nonnull final JsonObject entry )
+  {
+    final Comparison comparison = new Comparison();
+    for ( final String key : entry.keySet() )
+    {
+      final Predicate<String> action;
+      switch ( key )
+      {
+        case "old-api":
+          action = comparison::addOldApi;
+          break;
+        case "old-api-support":
+          action = comparison::addOldApiSupport;
+          break;
+        case "new-api":
+          action = comparison::addNewApi;
+          break;
+        case "new-api-support":
+          action = comparison::addNewApiSupport;
+          break;
+        case "config-file":
+          action = comparison::setConfigFile;
+          break;
+        case "output-file":
+          action = comparison::setOutputFile;
+          break;
+        case "baseline":
+          action = comparison::setBaselineFile;
+          break;
+        default:
+          c_logger.log( Level.SEVERE, "Error: Unknown key in batch manifest: " + key );
+          return null;
+      }
+      final JsonValue value = entry.get( key );
+      if ( !apply( key, value, action ) )
+      {
+        return null;
+      }
+    }
+    return comparison.validate() ? comparison : null;
+  }
+
+  private static boolean apply( @Nonnull final String key,
+                                @Nonnull final JsonValue value,
+                                @Nonnull final Predicate<String> action )
+  {
+    if ( JsonValue.ValueType.STRING == value.getValueType() )
+    {
+      return action.test( ( (JsonString) value ).getString() );
+    }
+    else if ( JsonValue.ValueType.ARRAY == value.getValueType() &&
+              ( key.endsWith( "-api" ) || key.endsWith( "-api-support" ) ) )
+    {
+      for ( final JsonValue element : (JsonArray) value )
+      {
+        if ( JsonValue.ValueType.STRING != element.getValueType() ||
+             !action.test( ( (JsonString) element ).getString() ) )
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+    else
+    {
+      c_logger.log( Level.SEVERE, "Error: Unexpected value for key " + key + " in batch manifest: " + value );
+      return false;
+    }
+  }
+}
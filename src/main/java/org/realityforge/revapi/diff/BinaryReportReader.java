@@ -0,0 +1,333 @@
+package org.realityforge.revapi.diff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reader for reports written using the binary format.
+ * The report is memory-mapped and records are decoded lazily as they are iterated. Strings are decoded
+ * from the mapped file the first time they are accessed and the decoded string is shared by every record
+ * that references it.
+ */
+public final class BinaryReportReader
+  implements Iterable<BinaryReportReader.Record>
+{
+  private static final int HEADER_SIZE = 8;
+  @Nonnull
+  private final ByteBuffer _buffer;
+  /**
+   * The offset and length of each string, indexed by reference - 1.
+   */
+  @Nonnull
+  private int[] _offsets = new int[ 1024 ];
+  @Nonnull
+  private int[] _lengths = new int[ 1024 ];
+  @Nonnull
+  private String[] _strings = new String[ 1024 ];
+  private int _stringCount;
+
+  private BinaryReportReader( @Nonnull final ByteBuffer buffer )
+  {
+    _buffer = Objects.requireNonNull( buffer );
+  }
+
+  /**
+   * Open the report at the specified path.
+   *
+   * @throws IOException if the file can not be read or is not a binary report.
+   */
+  @Nonnull
+  public static BinaryReportReader open( @Nonnull final Path path )
+    throws IOException
+  {
+    final ByteBuffer buffer;
+    try ( final FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) )
+    {
+      if ( channel.size() > Integer.MAX_VALUE )
+      {
+        throw new IOException( "Binary report " + path + " is too large to be mapped" );
+      }
+      buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+    }
+    if ( buffer.remaining() < HEADER_SIZE || BinaryReportWriter.MAGIC != buffer.getInt( 0 ) )
+    {
+      throw new IOException( "File " + path + " is not a binary report" );
+    }
+    if ( BinaryReportWriter.VERSION != buffer.getInt( 4 ) )
+    {
+      throw new IOException( "Binary report " + path + " has unsupported version " + buffer.getInt( 4 ) );
+    }
+    return new BinaryReportReader( buffer );
+  }
+
+  /**
+   * Convert a binary report into the json report format.
+   */
+  public static void convertToJson( @Nonnull final Path input, @Nonnull final Path output )
+    throws IOException
+  {
+    final BinaryReportReader reader = open( input );
+    try ( final ReportWriter writer = ReportWriter.create( ReportFormat.JSON, output ) )
+    {
+      writer.writeStart();
+      for ( final Record record : reader )
+      {
+        writer.writeDifference( record.getCode(),
+                                record.getDescription(),
+                                record.getNewElement(),
+                                record.getOldElement(),
+                                record.getEntries( record._classificationIndex ),
+                                record.getEntries( record._attachmentsIndex ) );
+      }
+      writer.writeEnd();
+    }
+  }
+
+  /**
+   * Return an iterator over the records in the report.
+   * The iterator throws an {@link IllegalStateException} if the report is malformed.
+   */
+  @Nonnull
+  @Override
+  public Iterator<Record> iterator()
+  {
+    return new RecordIterator();
+  }
+
+  @Nonnull
+  private synchronized String getString( final int reference )
+  {
+    final int index = reference - 1;
+    String value = _strings[ index ];
+    if ( null == value )
+    {
+      final ByteBuffer buffer = _buffer.duplicate();
+      buffer.position( _offsets[ index ] );
+      buffer.limit( _offsets[ index ] + _lengths[ index ] );
+      value = StandardCharsets.UTF_8.decode( buffer ).toString();
+      _strings[ index ] = value;
+    }
+    return value;
+  }
+
+  private synchronized void defineString( final int reference, final int offset, final int length )
+  {
+    if ( reference > _stringCount )
+    {
+      if ( reference > _offsets.length )
+      {
+        final int capacity = _offsets.length * 2;
+        _offsets = Arrays.copyOf( _offsets, capacity );
+        _lengths = Arrays.copyOf( _lengths, capacity );
+        _strings = Arrays.copyOf( _strings, capacity );
+      }
+      _offsets[ reference - 1 ] = offset;
+      _lengths[ reference - 1 ] = length;
+      _stringCount = reference;
+    }
+  }
+
+  /**
+   * A single difference from the report.
+   * Strings are not decoded until they are accessed.
+   */
+  public final class Record
+  {
+    /**
+     * The string references of the record. The first four are the code, description, new element and
+     * old element, followed by the classification entries and then the attachment entries where each
+     * group of entries is preceded by the number of entries.
+     */
+    @Nonnull
+    private final int[] _references;
+    private final int _classificationIndex;
+    private final int _attachmentsIndex;
+
+    private Record( @Nonnull final int[] references, final int classificationIndex, final int attachmentsIndex )
+    {
+      _references = references;
+      _classificationIndex = classificationIndex;
+      _attachmentsIndex = attachmentsIndex;
+    }
+
+    @Nonnull
+    public String getCode()
+    {
+      return getString( _references[ 0 ] );
+    }
+
+    @Nonnull
+    public String getDescription()
+    {
+      return getString( _references[ 1 ] );
+    }
+
+    @Nullable
+    public String getNewElement()
+    {
+      return 0 == _references[ 2 ] ? null : getString( _references[ 2 ] );
+    }
+
+    @Nullable
+    public String getOldElement()
+    {
+      return 0 == _references[ 3 ] ? null : getString( _references[ 3 ] );
+    }
+
+    /**
+     * Return the severity of the difference for each compatibility type, ordered by compatibility type.
+     */
+    @Nonnull
+    public Map<String, String> getClassification()
+    {
+      return toMap( getEntries( _classificationIndex ) );
+    }
+
+    /**
+     * Return the attachments of the difference, ordered by key.
+     */
+    @Nonnull
+    public Map<String, String> getAttachments()
+    {
+      return toMap( getEntries( _attachmentsIndex ) );
+    }
+
+    @Nonnull
+    private String[] getEntries( final int index )
+    {
+      final String[] entries = new String[ _references[ index ] * 2 ];
+      for ( int i = 0; i < entries.length; i++ )
+      {
+        entries[ i ] = getString( _references[ index + 1 + i ] );
+      }
+      return entries;
+    }
+
+    @Nonnull
+    private Map<String, String> toMap( @Nonnull final String[] entries )
+    {
+      final Map<String, String> map = new LinkedHashMap<>();
+      for ( int i = 0; i < entries.length; i += 2 )
+      {
+        map.put( entries[ i ], entries[ i + 1 ] );
+      }
+      return map;
+    }
+  }
+
+  private final class RecordIterator
+    implements Iterator<Record>
+  {
+    @Nonnull
+    private final ByteBuffer _input = _buffer.duplicate();
+    /**
+     * The number of strings defined by the records read so far.
+     */
+    private int _definedCount;
+
+    RecordIterator()
+    {
+      _input.position( HEADER_SIZE );
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return _input.hasRemaining();
+    }
+
+    @Nonnull
+    @Override
+    public Record next()
+    {
+      if ( !hasNext() )
+      {
+        throw new NoSuchElementException();
+      }
+      try
+      {
+        final int length = _input.getInt();
+        final int end = _input.position() + length;
+        final int[] references = new int[ 4 ];
+        for ( int i = 0; i < 4; i++ )
+        {
+          references[ i ] = readReference();
+        }
+        final int classificationIndex = 4;
+        final int[] withClassification = readEntries( references );
+        final int attachmentsIndex = withClassification.length;
+        final int[] allReferences = readEntries( withClassification );
+        if ( _input.position() != end )
+        {
+          throw new IllegalStateException( "Malformed record in binary report" );
+        }
+        return new Record( allReferences, classificationIndex, attachmentsIndex );
+      }
+      catch ( final RuntimeException e )
+      {
+        throw e instanceof IllegalStateException ? e : new IllegalStateException( "Malformed binary report", e );
+      }
+    }
+
+    /**
+     * Read a group of entries and return the references with the count and entries appended.
+     */
+    @Nonnull
+    private int[] readEntries( @Nonnull final int[] references )
+    {
+      final int count = readVarInt();
+      final int[] result = Arrays.copyOf( references, references.length + 1 + count * 2 );
+      result[ references.length ] = count;
+      for ( int i = 0; i < count * 2; i++ )
+      {
+        result[ references.length + 1 + i ] = readReference();
+      }
+      return result;
+    }
+
+    private int readReference()
+    {
+      final int reference = readVarInt();
+      if ( reference == _definedCount + 1 )
+      {
+        final int length = readVarInt();
+        defineString( reference, _input.position(), length );
+        _input.position( _input.position() + length );
+        _definedCount++;
+      }
+      else if ( reference > _definedCount )
+      {
+        throw new IllegalStateException( "Reference to undefined string in binary report" );
+      }
+      return reference;
+    }
+
+    private int readVarInt()
+    {
+      int value = 0;
+      int shift = 0;
+      while ( true )
+      {
+        final int b = _input.get() & 0xFF;
+        value |= ( b & 0x7F ) << shift;
+        if ( 0 == ( b & 0x80 ) )
+        {
+          return value;
+        }
+        shift += 7;
+      }
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package org.realityforge.revapi.diff;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Writes differences in the binary report format.
+ *
+ * <p>The file starts with the magic number and the format version, each a 4-byte big-endian integer.
+ * Each difference follows as a 4-byte length and then a body containing string references for the
+ * code, description, new element and old element, followed by the number of classification entries,
+ * a key and value reference for each entry, and then the same for the attachments. Counts and string
+ * references are unsigned LEB128 variable length integers. A reference of 0 denotes a null string and
+ * a reference one greater than the number of strings seen so far defines a new string, which is followed
+ * by its UTF-8 length and bytes. Any other reference is the 1-based index of a previously defined string,
+ * so each distinct string appears in the file exactly once.</p>
+ */
+final class BinaryReportWriter
+  implements ReportWriter
+{
+  static final int MAGIC = 0x52564442;
+  static final int VERSION = 1;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  @Nonnull
+  private final DataOutputStream _output;
+  @Nonnull
+  private final Map<String, Integer> _strings = new HashMap<>();
+  @Nonnull
+  private final ByteArrayOutputStream _record = new ByteArrayOutputStream();
+  /**
+   * Replace malformed input to match the behaviour of the json writer.
+   */
+  @Nonnull
+  private final CharsetEncoder _encoder =
+    StandardCharsets.UTF_8
+      .newEncoder()
+      .onMalformedInput( CodingErrorAction.REPLACE )
+      .onUnmappableCharacter( CodingErrorAction.REPLACE );
+
+  BinaryReportWriter( @Nonnull final OutputStream output )
+  {
+    _output = new DataOutputStream( Objects.requireNonNull( output ) );
+  }
+
+  @Nonnull
+  static BinaryReportWriter create( @Nonnull final Path path )
+    throws IOException
+  {
+    return new BinaryReportWriter( new BufferedOutputStream( Files.newOutputStream( path ), BUFFER_SIZE ) );
+  }
+
+  @Override
+  public void writeStart()
+    throws IOException
+  {
+    _output.writeInt( MAGIC );
+    _output.writeInt( VERSION );
+  }
+
+  @Override
+  public void writeDifference( @Nonnull final String code,
+                               @Nonnull final String description,
+                               @Nullable final String newElement,
+                               @Nullable final String oldElement,
+                               @Nonnull final String[] classification,
+                               @Nonnull final String[] attachments )
+    throws IOException
+  {
+    _record.reset();
+    writeString( code );
+    writeString( description );
+    writeString( newElement );
+    writeString( oldElement );
+    writeEntries( classification );
+    writeEntries( attachments );
+    _output.writeInt( _record.size() );
+    _record.writeTo( _output );
+  }
+
+  @Override
+  public void writeEnd()
+  {
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    _output.close();
+  }
+
+  private void writeEntries( @Nonnull final String[] entries )
+    throws IOException
+  {
+    writeVarInt( entries.length / 2 );
+    for ( final String entry : entries )
+    {
+      writeString( entry );
+    }
+  }
+
+  private void writeString( @Nullable final String value )
+    throws IOException
+  {
+    if ( null == value )
+    {
+      writeVarInt( 0 );
+    }
+    else
+    {
+      final Integer reference = _strings.get( value );
+      if ( null != reference )
+      {
+        writeVarInt( reference );
+      }
+      else
+      {
+        final int newReference = _strings.size() + 1;
+        _strings.put( value, newReference );
+        writeVarInt( newReference );
+        final ByteBuffer bytes = _encoder.encode( CharBuffer.wrap( value ) );
+        writeVarInt( bytes.remaining() );
+        _record.write( bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining() );
+      }
+    }
+  }
+
+  private void writeVarInt( final int value )
+  {
+    int v = value;
+    while ( 0 != ( v & ~0x7F ) )
+    {
+      _record.write( ( v & 0x7F ) | 0x80 );
+      v >>>= 7;
+    }
+    _record.write( v );
+  }
+}
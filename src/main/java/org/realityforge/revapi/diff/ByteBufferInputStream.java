@@ -0,0 +1,61 @@
+package org.realityforge.revapi.diff;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+
+/**
+ * An InputStream that reads from a ByteBuffer without copying the underlying data.
+ * The stream consumes the buffer so callers should supply a duplicate of any shared buffer.
+ */
+final class ByteBufferInputStream
+  extends InputStream
+{
+  @Nonnull
+  private final ByteBuffer _buffer;
+
+  ByteBufferInputStream( @Nonnull final ByteBuffer buffer )
+  {
+    _buffer = Objects.requireNonNull( buffer );
+  }
+
+  @Override
+  public int read()
+  {
+    return _buffer.hasRemaining() ? _buffer.get() & 0xFF : -1;
+  }
+
+  @Override
+  public int read( @Nonnull final byte[] b, final int off, final int len )
+  {
+    if ( 0 == len )
+    {
+      return 0;
+    }
+    else if ( !_buffer.hasRemaining() )
+    {
+      return -1;
+    }
+    else
+    {
+      final int count = Math.min( len, _buffer.remaining() );
+      _buffer.get( b, off, count );
+      return count;
+    }
+  }
+
+  @Override
+  public long skip( final long n )
+  {
+    final int count = (int) Math.max( 0, Math.min( n, _buffer.remaining() ) );
+    _buffer.position( _buffer.position() + count );
+    return count;
+  }
+
+  @Override
+  public int available()
+  {
+    return _buffer.remaining();
+  }
+}
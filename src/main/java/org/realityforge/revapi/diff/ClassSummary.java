@@ -0,0 +1,675 @@
+package org.realityforge.revapi.diff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A summary of a class file extracted by a lightweight scan of the class file structure.
+ * The summary records the types referenced by the class and a digest of the parts of the class
+ * that can contribute to the API. Method bodies, private members and package-private members are
+ * excluded from the digest so that implementation changes do not alter it.
+ */
+final class ClassSummary
+{
+  private static final int MAGIC = 0xCAFEBABE;
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_PROTECTED = 0x0004;
+  /**
+   * The flag set by compilers on most classes. It carries no meaning for the API.
+   */
+  private static final int ACC_SUPER = 0x0020;
+  private static final int CONSTANT_Utf8 = 1;
+  private static final int CONSTANT_Integer = 3;
+  private static final int CONSTANT_Float = 4;
+  private static final int CONSTANT_Long = 5;
+  private static final int CONSTANT_Double = 6;
+  private static final int CONSTANT_Class = 7;
+  private static final int CONSTANT_String = 8;
+  private static final int CONSTANT_MethodHandle = 15;
+  @Nonnull
+  private final String _name;
+  @Nullable
+  private final String _superName;
+  @Nullable
+  private final String _outerName;
+  @Nonnull
+  private final List<String> _interfaces;
+  @Nonnull
+  private final Set<String> _references;
+  @Nonnull
+  private final byte[] _apiDigest;
+  @Nonnull
+  private final byte[] _fieldDigest;
+
+  private ClassSummary( @Nonnull final String name,
+                        @Nullable final String superName,
+                        @Nullable final String outerName,
+                        @Nonnull final List<String> interfaces,
+                        @Nonnull final Set<String> references,
+                        @Nonnull final byte[] apiDigest,
+                        @Nonnull final byte[] fieldDigest )
+  {
+    _name = Objects.requireNonNull( name );
+    _superName = superName;
+    _outerName = outerName;
+    _interfaces = Objects.requireNonNull( interfaces );
+    _references = Objects.requireNonNull( references );
+    _apiDigest = Objects.requireNonNull( apiDigest );
+    _fieldDigest = Objects.requireNonNull( fieldDigest );
+  }
+
+  /**
+   * Return the binary name of the class using '.' as the package separator.
+   */
+  @Nonnull
+  String getName()
+  {
+    return _name;
+  }
+
+  @Nullable
+  String getSuperName()
+  {
+    return _superName;
+  }
+
+  /**
+   * Return the binary name of the class that immediately encloses the class or null if the class is a top-level class.
+   */
+  @Nullable
+  String getOuterName()
+  {
+    return _outerName;
+  }
+
+  @Nonnull
+  List<String> getInterfaces()
+  {
+    return _interfaces;
+  }
+
+  /**
+   * Return the binary names of the classes referenced from the class.
+   * This may include names that are not classes but it will not omit any referenced class.
+   */
+  @Nonnull
+  Set<String> getReferences()
+  {
+    return _references;
+  }
+
+  /**
+   * Return the digest of the parts of the class file that contribute to the API.
+   */
+  @Nonnull
+  byte[] getApiDigest()
+  {
+    return _apiDigest;
+  }
+
+  /**
+   * Return the digest of the declarations and constant values of every field including private fields.
+   * The fields determine the serialized form of the class so the digest changes whenever the serialized
+   * form or the serialVersionUID may have changed.
+   */
+  @Nonnull
+  byte[] getFieldDigest()
+  {
+    return _fieldDigest;
+  }
+
+  /**
+   * Return the name of the top-level class that encloses the class with the specified binary name.
+   * The enclosing classes are determined from the summaries rather than from the name as a top-level
+   * class may contain a '$' in its name. A class without a summary is treated as a top-level class.
+   */
+  @Nonnull
+  static String getTopLevelName( @Nonnull final String name, @Nonnull final Map<String, ClassSummary> summaries )
+  {
+    String topLevelName = name;
+    ClassSummary summary = summaries.get( name );
+    // Bound the number of steps so that malformed class files that enclose each other can not loop forever
+    for ( int i = 0; i < summaries.size() && null != summary && null != summary.getOuterName(); i++ )
+    {
+      topLevelName = summary.getOuterName();
+      summary = summaries.get( topLevelName );
+    }
+    return topLevelName;
+  }
+
+  @Nonnull
+  static ClassSummary parse( @Nonnull final byte[] data )
+    throws IOException
+  {
+    return new Parser( data ).parse();
+  }
+
+  private static final class Parser
+  {
+    @Nonnull
+    private final DataInputStream _input;
+    @Nonnull
+    private final ByteArrayOutputStream _api = new ByteArrayOutputStream();
+    /**
+     * The stream to which the API relevant data is written. Members are written to a separate stream
+     * so that they can be sorted before being added to the digest.
+     */
+    @Nonnull
+    private DataOutputStream _output = new DataOutputStream( _api );
+    /**
+     * The stream to which the declaration of the field currently being read is written, or null when not reading a field.
+     */
+    @Nullable
+    private DataOutputStream _field;
+    @Nonnull
+    private final List<byte[]> _fields = new ArrayList<>();
+    @Nonnull
+    private final Set<String> _references = new HashSet<>();
+    /**
+     * The internal name of the class.
+     */
+    private String _internalName;
+    /**
+     * The internal name of the enclosing class declared by the InnerClasses attribute.
+     */
+    @Nullable
+    private String _outerName;
+    /**
+     * The internal name of the enclosing class of a local or anonymous class declared by the EnclosingMethod attribute.
+     */
+    @Nullable
+    private String _enclosingName;
+    private int[] _tags;
+    private Object[] _values;
+
+    Parser( @Nonnull final byte[] data )
+    {
+      _input = new DataInputStream( new ByteArrayInputStream( data ) );
+    }
+
+    @Nonnull
+    ClassSummary parse()
+      throws IOException
+    {
+      if ( MAGIC != _input.readInt() )
+      {
+        throw new IOException( "Invalid class file" );
+      }
+      // Skip minor and major version
+      _input.readInt();
+      readConstantPool();
+
+      final int access = _input.readUnsignedShort() & ~ACC_SUPER;
+      _internalName = className( _input.readUnsignedShort() );
+      final String name = toBinaryName( _internalName );
+      final int superIndex = _input.readUnsignedShort();
+      final String superName = 0 == superIndex ? null : toBinaryName( className( superIndex ) );
+      final int interfaceCount = _input.readUnsignedShort();
+      final List<String> interfaces = new ArrayList<>( interfaceCount );
+      for ( int i = 0; i < interfaceCount; i++ )
+      {
+        interfaces.add( toBinaryName( className( _input.readUnsignedShort() ) ) );
+      }
+
+      _output.writeInt( access );
+      _output.writeUTF( name );
+      _output.writeUTF( String.valueOf( superName ) );
+      final List<String> sortedInterfaces = new ArrayList<>( interfaces );
+      Collections.sort( sortedInterfaces );
+      for ( final String anInterface : sortedInterfaces )
+      {
+        _output.writeUTF( anInterface );
+      }
+
+      readMembers( true );
+      readMembers( false );
+      readAttributes( true );
+
+      _fields.sort( ClassSummary::compare );
+      final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+      final DataOutputStream fieldOutput = new DataOutputStream( fields );
+      for ( final byte[] field : _fields )
+      {
+        fieldOutput.writeInt( field.length );
+        fieldOutput.write( field );
+      }
+      final String outerName = null != _outerName ? _outerName : _enclosingName;
+      return new ClassSummary( name,
+                               superName,
+                               null == outerName ? null : toBinaryName( outerName ),
+                               Collections.unmodifiableList( interfaces ),
+                               Collections.unmodifiableSet( _references ),
+                               digest( _api.toByteArray() ),
+                               digest( fields.toByteArray() ) );
+    }
+
+    private void readConstantPool()
+      throws IOException
+    {
+      final int count = _input.readUnsignedShort();
+      _tags = new int[ count ];
+      _values = new Object[ count ];
+      for ( int i = 1; i < count; i++ )
+      {
+        final int tag = _input.readUnsignedByte();
+        _tags[ i ] = tag;
+        switch ( tag )
+        {
+          case CONSTANT_Utf8:
+            final String value = _input.readUTF();
+            _values[ i ] = value;
+            scanReferences( value );
+            break;
+          case CONSTANT_Integer:
+            _values[ i ] = _input.readInt();
+            break;
+          case CONSTANT_Float:
+            _values[ i ] = _input.readFloat();
+            break;
+          case CONSTANT_Long:
+            _values[ i ] = _input.readLong();
+            // Long and double constants occupy two entries
+            i++;
+            break;
+          case CONSTANT_Double:
+            _values[ i ] = _input.readDouble();
+            i++;
+            break;
+          case CONSTANT_Class:
+          case CONSTANT_String:
+          case 16: // MethodType
+          case 19: // Module
+          case 20: // Package
+            _values[ i ] = _input.readUnsignedShort();
+            break;
+          case CONSTANT_MethodHandle:
+            _input.readUnsignedByte();
+            _input.readUnsignedShort();
+            break;
+          case 9: // Fieldref
+          case 10: // Methodref
+          case 11: // InterfaceMethodref
+          case 12: // NameAndType
+          case 17: // Dynamic
+          case 18: // InvokeDynamic
+            _input.readInt();
+            break;
+          default:
+            throw new IOException( "Unknown constant pool tag " + tag );
+        }
+      }
+      for ( int i = 1; i < count; i++ )
+      {
+        if ( CONSTANT_Class == _tags[ i ] )
+        {
+          addReference( className( i ) );
+        }
+      }
+    }
+
+    /**
+     * Read the fields or the methods of the class.
+     */
+    private void readMembers( final boolean fields )
+      throws IOException
+    {
+      final int count = _input.readUnsignedShort();
+      final List<byte[]> members = new ArrayList<>( count );
+      for ( int i = 0; i < count; i++ )
+      {
+        final int access = _input.readUnsignedShort();
+        final String name = utf8( _input.readUnsignedShort() );
+        final String descriptor = utf8( _input.readUnsignedShort() );
+        final boolean isApi = 0 != ( access & ( ACC_PUBLIC | ACC_PROTECTED ) );
+        final ByteArrayOutputStream field = fields ? new ByteArrayOutputStream() : null;
+        if ( null != field )
+        {
+          _field = new DataOutputStream( field );
+          _field.writeInt( access );
+          _field.writeUTF( name );
+          _field.writeUTF( descriptor );
+        }
+        if ( isApi )
+        {
+          final DataOutputStream classOutput = _output;
+          final ByteArrayOutputStream member = new ByteArrayOutputStream();
+          _output = new DataOutputStream( member );
+          _output.writeInt( access );
+          _output.writeUTF( name );
+          _output.writeUTF( descriptor );
+          readAttributes( true );
+          _output = classOutput;
+          members.add( member.toByteArray() );
+        }
+        else
+        {
+          readAttributes( false );
+        }
+        if ( null != field )
+        {
+          _fields.add( field.toByteArray() );
+          _field = null;
+        }
+      }
+      // Sort members so that re-ordering members in the source does not alter the digest
+      members.sort( ClassSummary::compare );
+      _output.writeInt( members.size() );
+      for ( final byte[] member : members )
+      {
+        _output.writeInt( member.length );
+        _output.write( member );
+      }
+    }
+
+    /**
+     * Read the attributes of the class or a member, adding the attributes relevant to the API to the digest.
+     */
+    private void readAttributes( final boolean isApi )
+      throws IOException
+    {
+      final int count = _input.readUnsignedShort();
+      for ( int i = 0; i < count; i++ )
+      {
+        final String name = utf8( _input.readUnsignedShort() );
+        final int length = _input.readInt();
+        if ( null != _field && "ConstantValue".equals( name ) )
+        {
+          final int index = _input.readUnsignedShort();
+          writeConstant( _field, index );
+          if ( isApi )
+          {
+            _output.writeUTF( name );
+            writeConstant( _output, index );
+          }
+        }
+        else if ( "EnclosingMethod".equals( name ) )
+        {
+          _enclosingName = className( _input.readUnsignedShort() );
+          _input.skipBytes( length - 2 );
+        }
+        else if ( isApi && isApiAttribute( name ) )
+        {
+          _output.writeUTF( name );
+          readApiAttribute( name );
+        }
+        else
+        {
+          _input.skipBytes( length );
+        }
+      }
+    }
+
+    private boolean isApiAttribute( @Nonnull final String name )
+    {
+      switch ( name )
+      {
+        case "ConstantValue":
+        case "Signature":
+        case "Exceptions":
+        case "Deprecated":
+        case "InnerClasses":
+        case "AnnotationDefault":
+        case "RuntimeVisibleAnnotations":
+        case "RuntimeInvisibleAnnotations":
+        case "RuntimeVisibleParameterAnnotations":
+        case "RuntimeInvisibleParameterAnnotations":
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    private void readApiAttribute( @Nonnull final String name )
+      throws IOException
+    {
+      switch ( name )
+      {
+        case "ConstantValue":
+        case "Signature":
+          writeConstant( _output, _input.readUnsignedShort() );
+          break;
+        case "Exceptions":
+        {
+          final int count = _input.readUnsignedShort();
+          final List<String> exceptions = new ArrayList<>( count );
+          for ( int i = 0; i < count; i++ )
+          {
+            exceptions.add( className( _input.readUnsignedShort() ) );
+          }
+          Collections.sort( exceptions );
+          for ( final String exception : exceptions )
+          {
+            _output.writeUTF( exception );
+          }
+          break;
+        }
+        case "Deprecated":
+          break;
+        case "InnerClasses":
+        {
+          final int count = _input.readUnsignedShort();
+          for ( int i = 0; i < count; i++ )
+          {
+            final int innerIndex = _input.readUnsignedShort();
+            final int outerIndex = _input.readUnsignedShort();
+            final int nameIndex = _input.readUnsignedShort();
+            final int access = _input.readUnsignedShort();
+            if ( 0 != outerIndex && _internalName.equals( className( innerIndex ) ) )
+            {
+              _outerName = className( outerIndex );
+            }
+            // Only record the accessibility of nested classes as the remaining data is determined by the names
+            _output.writeUTF( className( innerIndex ) );
+            _output.writeUTF( 0 == outerIndex ? "" : className( outerIndex ) );
+            _output.writeUTF( 0 == nameIndex ? "" : utf8( nameIndex ) );
+            _output.writeInt( access & ~ACC_SUPER );
+          }
+          break;
+        }
+        case "AnnotationDefault":
+          readElementValue();
+          break;
+        case "RuntimeVisibleAnnotations":
+        case "RuntimeInvisibleAnnotations":
+          readAnnotations();
+          break;
+        default:
+        {
+          final int parameterCount = _input.readUnsignedByte();
+          _output.writeInt( parameterCount );
+          for ( int i = 0; i < parameterCount; i++ )
+          {
+            readAnnotations();
+          }
+        }
+      }
+    }
+
+    private void readAnnotations()
+      throws IOException
+    {
+      final int count = _input.readUnsignedShort();
+      _output.writeInt( count );
+      for ( int i = 0; i < count; i++ )
+      {
+        readAnnotation();
+      }
+    }
+
+    private void readAnnotation()
+      throws IOException
+    {
+      _output.writeUTF( utf8( _input.readUnsignedShort() ) );
+      final int pairCount = _input.readUnsignedShort();
+      _output.writeInt( pairCount );
+      for ( int i = 0; i < pairCount; i++ )
+      {
+        _output.writeUTF( utf8( _input.readUnsignedShort() ) );
+        readElementValue();
+      }
+    }
+
+    private void readElementValue()
+      throws IOException
+    {
+      final int tag = _input.readUnsignedByte();
+      _output.writeByte( tag );
+      switch ( tag )
+      {
+        case 'e':
+          _output.writeUTF( utf8( _input.readUnsignedShort() ) );
+          _output.writeUTF( utf8( _input.readUnsignedShort() ) );
+          break;
+        case 'c':
+          _output.writeUTF( utf8( _input.readUnsignedShort() ) );
+          break;
+        case '@':
+          readAnnotation();
+          break;
+        case '[':
+        {
+          final int count = _input.readUnsignedShort();
+          _output.writeInt( count );
+          for ( int i = 0; i < count; i++ )
+          {
+            readElementValue();
+          }
+          break;
+        }
+        default:
+          writeConstant( _output, _input.readUnsignedShort() );
+      }
+    }
+
+    /**
+     * Write the resolved value of the constant so that the digest is independent of constant pool layout.
+     */
+    private void writeConstant( @Nonnull final DataOutputStream output, final int index )
+      throws IOException
+    {
+      final int tag = _tags[ index ];
+      output.writeByte( tag );
+      if ( CONSTANT_String == tag )
+      {
+        output.writeUTF( utf8( (Integer) _values[ index ] ) );
+      }
+      else
+      {
+        output.writeUTF( String.valueOf( _values[ index ] ) );
+      }
+    }
+
+    @Nonnull
+    private String utf8( final int index )
+    {
+      return (String) _values[ index ];
+    }
+
+    @Nonnull
+    private String className( final int index )
+    {
+      return utf8( (Integer) _values[ index ] );
+    }
+
+    /**
+     * Add the classes referenced from a descriptor, signature or internal class name.
+     */
+    private void scanReferences( @Nonnull final String value )
+    {
+      final int length = value.length();
+      int i = 0;
+      while ( i < length )
+      {
+        final char c = value.charAt( i );
+        if ( 'L' == c && ( 0 == i || isDescriptorBoundary( value.charAt( i - 1 ) ) ) )
+        {
+          int end = i + 1;
+          while ( end < length && ';' != value.charAt( end ) && '<' != value.charAt( end ) )
+          {
+            end++;
+          }
+          if ( end < length && end > i + 1 )
+          {
+            addReference( value.substring( i + 1, end ) );
+          }
+          i = end;
+        }
+        else
+        {
+          i++;
+        }
+      }
+    }
+
+    private boolean isDescriptorBoundary( final char c )
+    {
+      return '(' == c || ')' == c || '[' == c || ';' == c || '<' == c || '>' == c || ':' == c ||
+             '+' == c || '-' == c || '^' == c || Character.isUpperCase( c );
+    }
+
+    private void addReference( @Nonnull final String internalName )
+    {
+      int start = 0;
+      while ( start < internalName.length() && '[' == internalName.charAt( start ) )
+      {
+        start++;
+      }
+      if ( start > 0 )
+      {
+        // Array class constants use descriptor syntax
+        scanReferences( internalName.substring( start ) );
+      }
+      else
+      {
+        _references.add( toBinaryName( internalName ) );
+      }
+    }
+  }
+
+  @Nonnull
+  private static String toBinaryName( @Nonnull final String internalName )
+  {
+    return internalName.replace( '/', '.' );
+  }
+
+  private static int compare( @Nonnull final byte[] b1, @Nonnull final byte[] b2 )
+  {
+    final int length = Math.min( b1.length, b2.length );
+    for ( int i = 0; i < length; i++ )
+    {
+      final int result = Integer.compare( b1[ i ] & 0xFF, b2[ i ] & 0xFF );
+      if ( 0 != result )
+      {
+        return result;
+      }
+    }
+    return Integer.compare( b1.length, b2.length );
+  }
+
+  @Nonnull
+  private static byte[] digest( @Nonnull final byte[] data )
+  {
+    try
+    {
+      return MessageDigest.getInstance( "SHA-256" ).digest( data );
+    }
+    catch ( final NoSuchAlgorithmException e )
+    {
+      throw new IllegalStateException( e );
+    }
+  }
+}
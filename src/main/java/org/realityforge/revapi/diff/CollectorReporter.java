@@ -1,34 +1,82 @@
 package org.realityforge.revapi.diff;
 
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.revapi.AnalysisContext;
+import org.revapi.Difference;
+import org.revapi.DifferenceSeverity;
 import org.revapi.Report;
 import org.revapi.simple.SimpleReporter;
 
+/**
+ * Reporter that passes each report to the SpillingCollector supplied in the analysis context data.
+ * The reports are converted into records as they arrive so the reports and their elements are not retained.
+ * If a check severity is supplied instead then no reports are collected and the analysis is aborted by
+ * throwing a {@link DifferenceFoundException} once a difference of at least that severity is reported.
+ * Differences rejected by the DifferenceFilter supplied in the analysis context data, if any, are dropped
+ * before they are collected or checked. If the thread performing the analysis is interrupted, such as when
+ * another partition of the analysis fails, then the analysis is aborted at the next report.
+ */
 public final class CollectorReporter
   extends SimpleReporter
 {
-  private final List<Report> _reports = new ArrayList<>();
+  /**
+   * The key in the analysis context data under which the SpillingCollector is supplied.
+   */
+  static final String COLLECTOR_KEY = "revapi-diff.collector";
+  /**
+   * The key in the analysis context data under which the minimum DifferenceSeverity to check for is supplied.
+   */
+  static final String CHECK_SEVERITY_KEY = "revapi-diff.check-severity";
+  /**
+   * The key in the analysis context data under which the optional DifferenceFilter is supplied.
+   */
+  static final String FILTER_KEY = "revapi-diff.filter";
+  @Nullable
+  private SpillingCollector _collector;
+  @Nullable
+  private DifferenceSeverity _checkSeverity;
+  @Nullable
+  private DifferenceFilter _filter;
 
-  @Nonnull
-  List<Report> getReports()
+  @Override
+  public void initialize( @Nonnull final AnalysisContext analysisContext )
   {
-    // Ensure a stable ordering
-    return _reports
-      .stream()
-      .sorted( Comparator.comparing( r -> r.getNewElement() + "-" + r.getOldElement() ) )
-      .collect( Collectors.toList() );
+    super.initialize( analysisContext );
+    _checkSeverity = (DifferenceSeverity) analysisContext.getData( CHECK_SEVERITY_KEY );
+    _filter = (DifferenceFilter) analysisContext.getData( FILTER_KEY );
+    _collector =
+      null == _checkSeverity ?
+      (SpillingCollector) Objects.requireNonNull( analysisContext.getData( COLLECTOR_KEY ) ) :
+      null;
   }
 
   @Override
   public void report( @Nonnull Report report )
   {
-    if ( !report.getDifferences().isEmpty() )
+    if ( Thread.currentThread().isInterrupted() )
+    {
+      throw new CancellationException( "Analysis cancelled" );
+    }
+    final List<Difference> differences =
+      null != _filter ? _filter.filter( report.getDifferences() ) : report.getDifferences();
+    if ( null != _checkSeverity )
+    {
+      for ( final Difference difference : differences )
+      {
+        if ( DifferenceFilter.hasSeverity( difference, _checkSeverity ) )
+        {
+          throw new DifferenceFoundException();
+        }
+      }
+    }
+    else if ( !differences.isEmpty() )
     {
-      _reports.add( report );
+      assert null != _collector;
+      _collector.add( report, differences );
     }
   }
 }
@@ -0,0 +1,509 @@
+package org.realityforge.revapi.diff;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.jboss.dmr.ModelNode;
+import org.revapi.API;
+import org.revapi.AnalysisContext;
+import org.revapi.DifferenceSeverity;
+import org.revapi.configuration.JSONUtil;
+
+/**
+ * The description of a single comparison between an old and a new api.
+ * Each comparison produces a separate AnalysisContext so that a single Revapi instance
+ * can be used to perform multiple comparisons.
+ */
+final class Comparison
+{
+  static final String DEFAULT_CONFIG =
+    "[\n" +
+    "  {\n" +
+    "    \"extension\": \"revapi.java\",\n" +
+    "    \"configuration\": {\n" +
+    "      \"missing-classes\": {\n" +
+    "        \"behavior\": \"ignore\",\n" +
+    "        \"ignoreMissingAnnotations\": true\n" +
+    "      },\n" +
+    "      \"reportUsesFor\": \"all-differences\"\n" +
+    "    }\n" +
+    "  }\n" +
+    "]";
+  private static final Logger c_logger = Logger.getGlobal();
+  /**
+   * The maximum number of parsed configurations retained.
+   */
+  private static final int MAX_CACHED_CONFIGURATIONS = 64;
+  /**
+   * The parsed configurations keyed by their json text so that comparisons sharing a configuration,
+   * such as those in a timeline or a batch, only parse it once.
+   */
+  @Nonnull
+  private static final Map<String, ModelNode> c_configurations = new ConcurrentHashMap<>();
+  /**
+   * The directory against which relative paths are resolved. If null then paths are resolved against the
+   * current working directory.
+   */
+  @Nullable
+  private final File _baseDirectory;
+  @Nonnull
+  private final List<LabeledFileArchive> _oldArchives = new ArrayList<>();
+  @Nonnull
+  private final List<LabeledFileArchive> _oldSupportArchives = new ArrayList<>();
+  @Nonnull
+  private final List<LabeledFileArchive> _newArchives = new ArrayList<>();
+  @Nonnull
+  private final List<LabeledFileArchive> _newSupportArchives = new ArrayList<>();
+  /**
+   * The successive versions of the api compared when performing a timeline analysis.
+   */
+  @Nonnull
+  private final List<LabeledFileArchive> _timelineArchives = new ArrayList<>();
+  @Nullable
+  private File _configFile;
+  @Nullable
+  private File _outputFile;
+  @Nullable
+  private File _baselineFile;
+  private boolean _errorOnDifferences;
+  private boolean _incremental;
+  @Nonnull
+  private ReportFormat _format = ReportFormat.JSON;
+  /**
+   * The consumer passed each difference as it is emitted, if any.
+   */
+  @Nullable
+  private SpillingCollector.RecordConsumer _listener;
+  /**
+   * The minimum severity of a difference that fails the comparison when checking. If set then no report is written.
+   */
+  @Nullable
+  private DifferenceSeverity _checkSeverity;
+  /**
+   * The filter selecting the differences that are collected. The filter may be shared between comparisons.
+   */
+  @Nonnull
+  private DifferenceFilter _filter = new DifferenceFilter();
+
+  Comparison()
+  {
+    this( null );
+  }
+
+  Comparison( @Nullable final File baseDirectory )
+  {
+    _baseDirectory = baseDirectory;
+  }
+
+  boolean setConfigFile( @Nonnull final String argument )
+  {
+    final File file = resolve( argument );
+    if ( !file.exists() )
+    {
+      c_logger.log( Level.SEVERE, "Error: Specified config file does not exist: " + argument );
+      return false;
+    }
+    _configFile = file;
+    return true;
+  }
+
+  void setDefaultConfigFile( @Nullable final File configFile )
+  {
+    if ( null == _configFile )
+    {
+      _configFile = configFile;
+    }
+  }
+
+  boolean addOldApi( @Nonnull final String argument )
+  {
+    final LabeledFileArchive archive = parseArchive( argument );
+    if ( !archive.getFile().exists() )
+    {
+      c_logger.log( Level.SEVERE, "Error: Specified old api does not exist: " + argument );
+      return false;
+    }
+    _oldArchives.add( archive );
+    return true;
+  }
+
+  boolean addOldApiSupport( @Nonnull final String argument )
+  {
+    final File file = resolve( argument );
+    if ( !file.exists() )
+    {
+      c_logger.log( Level.SEVERE, "Error: Specified old api support archive does not exist: " + argument );
+      return false;
+    }
+    _oldSupportArchives.add( new LabeledFileArchive( file.getName(), file ) );
+    return true;
+  }
+
+  boolean addNewApi( @Nonnull final String argument )
+  {
+    final LabeledFileArchive archive = parseArchive( argument );
+    if ( !archive.getFile().exists() )
+    {
+      c_logger.log( Level.SEVERE, "Error: Specified new api does not exist: " + argument );
+      return false;
+    }
+    _newArchives.add( archive );
+    return true;
+  }
+
+  boolean addNewApiSupport( @Nonnull final String argument )
+  {
+    final File file = resolve( argument );
+    if ( !file.exists() )
+    {
+      c_logger.log( Level.SEVERE, "Error: Specified new api support archive does not exist: " + argument );
+      return false;
+    }
+    _newSupportArchives.add( new LabeledFileArchive( file.getName(), file ) );
+    return true;
+  }
+
+  boolean addTimelineApi( @Nonnull final String argument )
+  {
+    final LabeledFileArchive archive = parseArchive( argument );
+    if ( !archive.getFile().exists() )
+    {
+      c_logger.log( Level.SEVERE, "Error: Specified timeline api does not exist: " + argument );
+      return false;
+    }
+    _timelineArchives.add( archive );
+    return true;
+  }
+
+  boolean setOutputFile( @Nonnull final String argument )
+  {
+    final File file = resolve( argument );
+    if ( !file.getAbsoluteFile().getParentFile().exists() )
+    {
+      c_logger.log( Level.SEVERE,
+                    "Error: Directory containing output file does not exist: " + file.getParentFile() );
+      return false;
+    }
+    _outputFile = file;
+    return true;
+  }
+
+  boolean setBaselineFile( @Nonnull final String argument )
+  {
+    final File file = resolve( argument );
+    if ( !file.exists() )
+    {
+      c_logger.log( Level.SEVERE, "Error: Specified baseline report does not exist: " + argument );
+      return false;
+    }
+    _baselineFile = file;
+    return true;
+  }
+
+  /**
+   * Return the report of a previous comparison. If present then only the differences that are not in the
+   * baseline are emitted.
+   */
+  @Nullable
+  File getBaselineFile()
+  {
+    return _baselineFile;
+  }
+
+  boolean isErrorOnDifferences()
+  {
+    return _errorOnDifferences;
+  }
+
+  void setErrorOnDifferences( final boolean errorOnDifferences )
+  {
+    _errorOnDifferences = errorOnDifferences;
+  }
+
+  boolean isIncremental()
+  {
+    return _incremental;
+  }
+
+  void setIncremental( final boolean incremental )
+  {
+    _incremental = incremental;
+  }
+
+  @Nonnull
+  ReportFormat getFormat()
+  {
+    return _format;
+  }
+
+  void setFormat( @Nonnull final ReportFormat format )
+  {
+    _format = format;
+  }
+
+  @Nullable
+  DifferenceSeverity getCheckSeverity()
+  {
+    return _checkSeverity;
+  }
+
+  void setCheckSeverity( @Nullable final DifferenceSeverity checkSeverity )
+  {
+    _checkSeverity = checkSeverity;
+  }
+
+  @Nonnull
+  DifferenceFilter getFilter()
+  {
+    return _filter;
+  }
+
+  void setFilter( @Nonnull final DifferenceFilter filter )
+  {
+    _filter = filter;
+  }
+
+  @Nullable
+  SpillingCollector.RecordConsumer getListener()
+  {
+    return _listener;
+  }
+
+  void setListener( @Nullable final SpillingCollector.RecordConsumer listener )
+  {
+    _listener = listener;
+  }
+
+  @Nonnull
+  File getOutputFile()
+  {
+    assert null != _outputFile;
+    return _outputFile;
+  }
+
+  @Nonnull
+  List<LabeledFileArchive> getOldArchives()
+  {
+    return _oldArchives;
+  }
+
+  @Nonnull
+  List<LabeledFileArchive> getOldSupportArchives()
+  {
+    return _oldSupportArchives;
+  }
+
+  @Nonnull
+  List<LabeledFileArchive> getNewArchives()
+  {
+    return _newArchives;
+  }
+
+  @Nonnull
+  List<LabeledFileArchive> getNewSupportArchives()
+  {
+    return _newSupportArchives;
+  }
+
+  @Nonnull
+  List<LabeledFileArchive> getTimelineArchives()
+  {
+    return _timelineArchives;
+  }
+
+  /**
+   * Replace each new api support archive that is identical to an old api support archive with the same
+   * label by the old api support archive so that the archive is only mapped and digested once.
+   * Archives are identical if they refer to the same file or if their size and digest are equal.
+   * Revapi builds a separate model of each api so the classes of a shared archive are still parsed once per api.
+   *
+   * @return the number of bytes in the support archives that are now shared.
+   */
+  long shareSupportArchives()
+    throws IOException
+  {
+    long sharedBytes = 0;
+    for ( int i = 0; i < _newSupportArchives.size(); i++ )
+    {
+      final LabeledFileArchive archive = _newSupportArchives.get( i );
+      for ( final LabeledFileArchive candidate : _oldSupportArchives )
+      {
+        if ( archive != candidate && isIdentical( archive, candidate ) )
+        {
+          _newSupportArchives.set( i, candidate );
+          sharedBytes += candidate.getFile().length();
+          break;
+        }
+      }
+    }
+    return sharedBytes;
+  }
+
+  private static boolean isIdentical( @Nonnull final LabeledFileArchive archive1,
+                                      @Nonnull final LabeledFileArchive archive2 )
+    throws IOException
+  {
+    final File file1 = archive1.getFile();
+    final File file2 = archive2.getFile();
+    return archive1.getName().equals( archive2.getName() ) &&
+           ( file1.getCanonicalFile().equals( file2.getCanonicalFile() ) ||
+             ( file1.length() == file2.length() && Arrays.equals( archive1.getDigest(), archive2.getDigest() ) ) );
+  }
+
+  /**
+   * Create the comparison between a pair of consecutive apis in a timeline.
+   * The step shares the archive instances so each archive is only mapped and digested once, and inherits
+   * the support archives, configuration and settings of this comparison.
+   */
+  @Nonnull
+  Comparison createStep( @Nonnull final LabeledFileArchive oldArchive,
+                         @Nonnull final LabeledFileArchive newArchive,
+                         @Nonnull final File outputFile )
+  {
+    final Comparison step = new Comparison( _baseDirectory );
+    step._oldArchives.add( oldArchive );
+    step._oldSupportArchives.addAll( _oldSupportArchives );
+    step._newArchives.add( newArchive );
+    step._newSupportArchives.addAll( _newSupportArchives );
+    step._configFile = _configFile;
+    step._outputFile = outputFile;
+    step._errorOnDifferences = _errorOnDifferences;
+    step._incremental = _incremental;
+    step._format = _format;
+    step._filter = _filter;
+    return step;
+  }
+
+  /**
+   * Return the json configuration passed to Revapi.
+   */
+  @Nonnull
+  String getConfiguration()
+    throws IOException
+  {
+    return null != _configFile ?
+           new String( Files.readAllBytes( _configFile.toPath() ), StandardCharsets.UTF_8 ) :
+           DEFAULT_CONFIG;
+  }
+
+  /**
+   * Verify that the comparison has all the required parameters, logging an error if not.
+   */
+  boolean validate()
+  {
+    if ( _newArchives.isEmpty() )
+    {
+      c_logger.log( Level.SEVERE, "Error: --new-api not specified" );
+      return false;
+    }
+    else if ( _oldArchives.isEmpty() )
+    {
+      c_logger.log( Level.SEVERE, "Error: --old-api not specified" );
+      return false;
+    }
+    else if ( null == _outputFile && null == _checkSeverity )
+    {
+      c_logger.log( Level.SEVERE, "Error: --output-file not specified" );
+      return false;
+    }
+    else
+    {
+      return true;
+    }
+  }
+
+  /**
+   * Verify that the comparison has all the parameters required to perform a timeline analysis, logging an error if not.
+   */
+  boolean validateTimeline()
+  {
+    if ( _timelineArchives.size() < 2 )
+    {
+      c_logger.log( Level.SEVERE, "Error: --timeline requires at least two apis" );
+      return false;
+    }
+    else if ( null == _outputFile )
+    {
+      c_logger.log( Level.SEVERE, "Error: --output-file not specified" );
+      return false;
+    }
+    else
+    {
+      return true;
+    }
+  }
+
+  /**
+   * Build the context for the analysis.
+   *
+   * @param data the data made available to the extensions performing the analysis.
+   */
+  @Nonnull
+  AnalysisContext buildAnalysisContext( @Nonnull final Map<String, Object> data )
+    throws IOException
+  {
+    return AnalysisContext.builder()
+      .withOldAPI( buildAPI( _oldArchives, _oldSupportArchives ) )
+      .withNewAPI( buildAPI( _newArchives, _newSupportArchives ) )
+      .withConfiguration( parseConfiguration( getConfiguration() ) )
+      .withData( data )
+      .build();
+  }
+
+  /**
+   * Return the parsed configuration. The cached node is cloned as the analysis context may modify it.
+   */
+  @Nonnull
+  private static ModelNode parseConfiguration( @Nonnull final String json )
+  {
+    if ( c_configurations.size() >= MAX_CACHED_CONFIGURATIONS && !c_configurations.containsKey( json ) )
+    {
+      c_configurations.clear();
+    }
+    return c_configurations.computeIfAbsent( json, j -> ModelNode.fromJSONString( JSONUtil.stripComments( j ) ) )
+      .clone();
+  }
+
+  @Nonnull
+  private static API buildAPI( @Nonnull final List<LabeledFileArchive> archives,
+                               @Nonnull final List<LabeledFileArchive> supportArchives )
+  {
+    return API.builder().addArchives( archives ).addSupportArchives( supportArchives ).build();
+  }
+
+  @Nonnull
+  private File resolve( @Nonnull final String path )
+  {
+    final File file = new File( path );
+    return null == _baseDirectory || file.isAbsolute() ? file : new File( _baseDirectory, path );
+  }
+
+  @Nonnull
+  private LabeledFileArchive parseArchive( @Nonnull final String argument )
+  {
+    final String name;
+    final File file;
+    final int separatorIndex = argument.indexOf( "::" );
+    if ( -1 != separatorIndex )
+    {
+      name = argument.substring( 0, separatorIndex );
+      file = resolve( argument.substring( separatorIndex + 2 ) );
+    }
+    else
+    {
+      file = resolve( argument );
+      name = file.getName();
+    }
+    return new LabeledFileArchive( name, file );
+  }
+}
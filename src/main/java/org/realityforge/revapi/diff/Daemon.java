@@ -0,0 +1,278 @@
+package org.realityforge.revapi.diff;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+
+/**
+ * A long-running server that performs comparisons on behalf of clients so that the cost of starting
+ * the JVM and initializing Revapi is only paid once. The server only listens on the loopback interface.
+ * Each connection carries a single json request object and receives a single json response object.
+ * The server shuts down when it has been idle for longer than the idle timeout.
+ *
+ * <p>The loopback interface is reachable by every user of the machine, so on startup the server writes a
+ * random token to a file that only the owner can read and rejects any request that does not carry the token.
+ * Only clients that can read the token file are able to request comparisons, which are performed with the
+ * permissions of the owner.</p>
+ */
+final class Daemon
+{
+  private static final Logger c_logger = Logger.getGlobal();
+  /**
+   * The interval at which the server checks whether the idle timeout has been exceeded.
+   */
+  private static final int POLL_INTERVAL = 1000;
+  private static final int TOKEN_SIZE = 32;
+  private static final String TOKEN_KEY = "token";
+  private static final String ERROR_KEY = "error";
+  private final int _port;
+  private final long _idleTimeout;
+  /**
+   * The maximum time a client may take to send its request before the connection is closed.
+   */
+  private final int _requestTimeout;
+  private final int _threads;
+  @Nonnull
+  private final Path _tokenFile;
+  @Nonnull
+  private final Function<JsonObject, JsonObject> _handler;
+  @Nonnull
+  private final AtomicInteger _activeRequests = new AtomicInteger();
+  @Nonnull
+  private final AtomicLong _lastActivity = new AtomicLong();
+
+  Daemon( final int port,
+          final long idleTimeout,
+          final int requestTimeout,
+          final int threads,
+          @Nonnull final Path tokenFile,
+          @Nonnull final Function<JsonObject, JsonObject> handler )
+  {
+    _port = port;
+    _idleTimeout = idleTimeout;
+    _requestTimeout = requestTimeout;
+    _threads = threads;
+    _tokenFile = Objects.requireNonNull( tokenFile );
+    _handler = Objects.requireNonNull( handler );
+  }
+
+  /**
+   * Send a request to the daemon listening on the specified port and return the response.
+   * The request is authenticated using the token that the daemon wrote to the token file.
+   */
+  @Nonnull
+  static JsonObject send( final int port, @Nonnull final Path tokenFile, @Nonnull final JsonObject request )
+    throws IOException
+  {
+    final String token = new String( Files.readAllBytes( tokenFile ), StandardCharsets.UTF_8 ).trim();
+    try ( final Socket socket = new Socket( InetAddress.getLoopbackAddress(), port ) )
+    {
+      write( socket.getOutputStream(), Json.createObjectBuilder( request ).add( TOKEN_KEY, token ).build() );
+      socket.shutdownOutput();
+      try
+      {
+        return Json.createReader( socket.getInputStream() ).readObject();
+      }
+      catch ( final JsonException e )
+      {
+        throw new IOException( "Invalid response from daemon", e );
+      }
+    }
+  }
+
+  /**
+   * Return the message describing why the daemon rejected the request, or null if the request was handled.
+   */
+  @Nullable
+  static String getError( @Nonnull final JsonObject response )
+  {
+    return response.containsKey( ERROR_KEY ) ? response.getString( ERROR_KEY ) : null;
+  }
+
+  /**
+   * Return a response that rejects the request with the specified message.
+   */
+  @Nonnull
+  static JsonObject createErrorResponse( @Nonnull final String message )
+  {
+    return Json.createObjectBuilder().add( ERROR_KEY, message ).build();
+  }
+
+  /**
+   * Accept requests until the daemon has been idle for longer than the idle timeout.
+   */
+  void run()
+    throws IOException, InterruptedException
+  {
+    final byte[] token = createToken();
+    final ExecutorService executor = Executors.newFixedThreadPool( _threads );
+    try ( final ServerSocket server = new ServerSocket( _port, 50, InetAddress.getLoopbackAddress() ) )
+    {
+      // The token is written once the port is bound so that a daemon that fails to start does not replace
+      // the token of the daemon already listening on the port
+      writeTokenFile( token );
+      try
+      {
+        server.setSoTimeout( POLL_INTERVAL );
+        c_logger.log( Level.INFO, "Daemon listening on port " + server.getLocalPort() );
+        _lastActivity.set( System.currentTimeMillis() );
+        while ( true )
+        {
+          final Socket socket;
+          try
+          {
+            socket = server.accept();
+          }
+          catch ( final SocketTimeoutException e )
+          {
+            if ( 0 == _activeRequests.get() && System.currentTimeMillis() - _lastActivity.get() > _idleTimeout )
+            {
+              break;
+            }
+            continue;
+          }
+          _activeRequests.incrementAndGet();
+          executor.execute( () -> serve( socket, token ) );
+        }
+        if ( c_logger.isLoggable( Level.INFO ) )
+        {
+          c_logger.log( Level.INFO, "Daemon shutting down after being idle for " + _idleTimeout + "ms" );
+        }
+      }
+      finally
+      {
+        Files.deleteIfExists( _tokenFile );
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+      executor.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+    }
+  }
+
+  private void serve( @Nonnull final Socket socket, @Nonnull final byte[] token )
+  {
+    try ( final Socket s = socket;
+          final InputStream input = s.getInputStream();
+          final OutputStream output = s.getOutputStream() )
+    {
+      // A client that does not send its request in time is disconnected so that it can not hold a worker
+      s.setSoTimeout( _requestTimeout );
+      // The reader is not closed as that would close the socket before the response is written
+      final JsonObject request = Json.createReader( input ).readObject();
+      if ( isAuthenticated( request, token ) )
+      {
+        write( output, _handler.apply( request ) );
+      }
+      else
+      {
+        c_logger.log( Level.WARNING, "Rejected daemon request without a valid token" );
+        write( output, createErrorResponse( "The request does not carry the token of the daemon" ) );
+      }
+    }
+    catch ( final IOException | JsonException e )
+    {
+      c_logger.log( Level.WARNING, "Error processing daemon request: " + e );
+    }
+    finally
+    {
+      _lastActivity.set( System.currentTimeMillis() );
+      _activeRequests.decrementAndGet();
+    }
+  }
+
+  private static boolean isAuthenticated( @Nonnull final JsonObject request, @Nonnull final byte[] token )
+  {
+    final JsonValue value = request.get( TOKEN_KEY );
+    return value instanceof JsonString &&
+           MessageDigest.isEqual( token, ( (JsonString) value ).getString().getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  @Nonnull
+  private static byte[] createToken()
+  {
+    final byte[] bytes = new byte[ TOKEN_SIZE ];
+    new SecureRandom().nextBytes( bytes );
+    final StringBuilder sb = new StringBuilder( TOKEN_SIZE * 2 );
+    for ( final byte b : bytes )
+    {
+      sb.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+    }
+    return sb.toString().getBytes( StandardCharsets.UTF_8 );
+  }
+
+  /**
+   * Write the token to a newly created file that only the owner can read or write.
+   * Any existing file is replaced and creation fails if another process creates the file concurrently.
+   */
+  private void writeTokenFile( @Nonnull final byte[] token )
+    throws IOException
+  {
+    final Path directory = _tokenFile.toAbsolutePath().getParent();
+    if ( null != directory )
+    {
+      Files.createDirectories( directory );
+    }
+    Files.deleteIfExists( _tokenFile );
+    if ( _tokenFile.getFileSystem().supportedFileAttributeViews().contains( "posix" ) )
+    {
+      Files.createFile( _tokenFile,
+                        PosixFilePermissions.asFileAttribute( PosixFilePermissions.fromString( "rw-------" ) ) );
+    }
+    else
+    {
+      Files.createFile( _tokenFile );
+      final File file = _tokenFile.toFile();
+      if ( !file.setReadable( false, false ) ||
+           !file.setReadable( true, true ) ||
+           !file.setWritable( false, false ) ||
+           !file.setWritable( true, true ) )
+      {
+        throw new IOException( "Unable to restrict access to token file " + _tokenFile );
+      }
+    }
+    Files.write( _tokenFile, token );
+  }
+
+  private static void write( @Nonnull final OutputStream output, @Nonnull final JsonObject object )
+    throws IOException
+  {
+    final StringWriter writer = new StringWriter();
+    try ( final JsonWriter jsonWriter = Json.createWriter( writer ) )
+    {
+      jsonWriter.writeObject( object );
+    }
+    output.write( writer.toString().getBytes( StandardCharsets.UTF_8 ) );
+    output.flush();
+  }
+}
@@ -0,0 +1,186 @@
+package org.realityforge.revapi.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.revapi.Difference;
+import org.revapi.DifferenceSeverity;
+
+/**
+ * Selects the differences that are collected based on their severity, code and package.
+ * The globs are compiled into a single pattern per criteria as they are added so that matching a
+ * difference is cheap. The filter must not be modified once the analysis has started.
+ */
+final class DifferenceFilter
+{
+  private static final String PACKAGE_ATTACHMENT = "package";
+  @Nullable
+  private DifferenceSeverity _minSeverity;
+  @Nonnull
+  private final List<String> _includeCodes = new ArrayList<>();
+  @Nonnull
+  private final List<String> _excludeCodes = new ArrayList<>();
+  @Nonnull
+  private final List<String> _includePackages = new ArrayList<>();
+  @Nullable
+  private Pattern _includeCodePattern;
+  @Nullable
+  private Pattern _excludeCodePattern;
+  @Nullable
+  private Pattern _includePackagePattern;
+
+  void setMinSeverity( @Nonnull final DifferenceSeverity minSeverity )
+  {
+    _minSeverity = minSeverity;
+  }
+
+  void addIncludeCode( @Nonnull final String glob )
+  {
+    _includeCodes.add( glob );
+    _includeCodePattern = compile( _includeCodes );
+  }
+
+  void addExcludeCode( @Nonnull final String glob )
+  {
+    _excludeCodes.add( glob );
+    _excludeCodePattern = compile( _excludeCodes );
+  }
+
+  void addIncludePackage( @Nonnull final String glob )
+  {
+    _includePackages.add( glob );
+    _includePackagePattern = compile( _includePackages );
+  }
+
+  /**
+   * Return true if the filter accepts every difference.
+   */
+  boolean isEmpty()
+  {
+    return null == _minSeverity && _includeCodes.isEmpty() && _excludeCodes.isEmpty() && _includePackages.isEmpty();
+  }
+
+  /**
+   * Return a description of the criteria of the filter that is stable between runs.
+   */
+  @Nonnull
+  String describe()
+  {
+    return "minSeverity=" + _minSeverity +
+           ",includeCodes=" + _includeCodes +
+           ",excludeCodes=" + _excludeCodes +
+           ",includePackages=" + _includePackages;
+  }
+
+  /**
+   * Return the differences accepted by the filter. The supplied list is returned if every difference is accepted.
+   */
+  @Nonnull
+  List<Difference> filter( @Nonnull final List<Difference> differences )
+  {
+    List<Difference> accepted = null;
+    for ( int i = 0; i < differences.size(); i++ )
+    {
+      final Difference difference = differences.get( i );
+      if ( matches( difference ) )
+      {
+        if ( null != accepted )
+        {
+          accepted.add( difference );
+        }
+      }
+      else if ( null == accepted )
+      {
+        accepted = new ArrayList<>( differences.subList( 0, i ) );
+      }
+    }
+    return null != accepted ? accepted : differences;
+  }
+
+  boolean matches( @Nonnull final Difference difference )
+  {
+    if ( null != _minSeverity && !hasSeverity( difference, _minSeverity ) )
+    {
+      return false;
+    }
+    else if ( null != _includeCodePattern && !_includeCodePattern.matcher( difference.code ).matches() )
+    {
+      return false;
+    }
+    else if ( null != _excludeCodePattern && _excludeCodePattern.matcher( difference.code ).matches() )
+    {
+      return false;
+    }
+    else if ( null != _includePackagePattern )
+    {
+      final String packageName = difference.attachments.get( PACKAGE_ATTACHMENT );
+      return null != packageName && _includePackagePattern.matcher( packageName ).matches();
+    }
+    else
+    {
+      return true;
+    }
+  }
+
+  /**
+   * Return true if the filter may accept a difference with the specified code.
+   */
+  boolean acceptsCode( @Nonnull final String code )
+  {
+    return ( null == _includeCodePattern || _includeCodePattern.matcher( code ).matches() ) &&
+           ( null == _excludeCodePattern || !_excludeCodePattern.matcher( code ).matches() );
+  }
+
+  /**
+   * Return true if the severity of the difference for any compatibility type is at least the specified severity.
+   */
+  static boolean hasSeverity( @Nonnull final Difference difference, @Nonnull final DifferenceSeverity minSeverity )
+  {
+    for ( final DifferenceSeverity severity : difference.classification.values() )
+    {
+      if ( severity.compareTo( minSeverity ) >= 0 )
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compile the globs into a single pattern where '*' matches any sequence of characters and '?' matches
+   * any single character.
+   */
+  @Nonnull
+  private static Pattern compile( @Nonnull final List<String> globs )
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( final String glob : globs )
+    {
+      if ( 0 != sb.length() )
+      {
+        sb.append( '|' );
+      }
+      int start = 0;
+      for ( int i = 0; i < glob.length(); i++ )
+      {
+        final char ch = glob.charAt( i );
+        if ( '*' == ch || '?' == ch )
+        {
+          if ( i > start )
+          {
+            sb.append( Pattern.quote( glob.substring( start, i ) ) );
+          }
+          sb.append( '*' == ch ? ".*" : "." );
+          start = i + 1;
+        }
+      }
+      if ( glob.length() > start )
+      {
+        sb.append( Pattern.quote( glob.substring( start ) ) );
+      }
+    }
+    return Pattern.compile( sb.toString() );
+  }
+}
@@ -0,0 +1,35 @@
+package org.realityforge.revapi.diff;
+
+import javax.annotation.Nullable;
+
+/**
+ * Exception thrown by the reporter when checking a comparison to abort the analysis once a difference is found.
+ * The exception carries no stack trace as it is used for control flow rather than to report an error.
+ */
+final class DifferenceFoundException
+  extends RuntimeException
+{
+  private static final long serialVersionUID = 1L;
+
+  DifferenceFoundException()
+  {
+    super( "Difference found", null, false, false );
+  }
+
+  /**
+   * Return true if the throwable or any of its causes is a DifferenceFoundException.
+   */
+  static boolean isCause( @Nullable final Throwable throwable )
+  {
+    Throwable t = throwable;
+    while ( null != t )
+    {
+      if ( t instanceof DifferenceFoundException )
+      {
+        return true;
+      }
+      t = t.getCause();
+    }
+    return false;
+  }
+}
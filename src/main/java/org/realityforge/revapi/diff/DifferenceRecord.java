@@ -0,0 +1,442 @@
+package org.realityforge.revapi.diff;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.revapi.CompatibilityType;
+import org.revapi.Difference;
+import org.revapi.Report;
+
+/**
+ * A compact representation of a single difference that retains only the data emitted in the report.
+ * The record also retains the keys used to order the report so that records can be sorted independently
+ * of the Report they were created from. Strings are deduplicated using an intern table as the same
+ * elements, codes, descriptions and attachments recur across many differences.
+ */
+final class DifferenceRecord
+{
+  /**
+   * The order in which records are emitted. Reports are sorted by report key and reports with identical keys
+   * are sorted by the digest of their differences, so that the order does not depend on the order in which
+   * concurrent analyses report them. Only reports with identical keys and digests retain the order of arrival.
+   * The differences in each report retain the order established when the record was created.
+   */
+  static final Comparator<DifferenceRecord> ORDER =
+    Comparator.comparing( ( DifferenceRecord r ) -> r._reportKey )
+      .thenComparingLong( r -> r._reportDigest )
+      .thenComparingLong( r -> r._reportSequence )
+      .thenComparingInt( r -> r._index );
+  /**
+   * The approximate number of bytes retained by a record and its arrays excluding the strings.
+   */
+  private static final int RECORD_OVERHEAD = 96;
+  /**
+   * The length written in place of the old element when the old element is the same as the new element.
+   */
+  private static final int SAME_AS_NEW_ELEMENT = -2;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  @Nonnull
+  private final String _reportKey;
+  /**
+   * A 64-bit FNV-1a hash of the emitted content of every difference in the report.
+   */
+  private final long _reportDigest;
+  private final long _reportSequence;
+  /**
+   * The position of the difference within the report after the differences have been sorted by descriptor.
+   */
+  private final int _index;
+  @Nonnull
+  private final String _code;
+  @Nonnull
+  private final String _description;
+  @Nullable
+  private final String _newElement;
+  @Nullable
+  private final String _oldElement;
+  /**
+   * The names of the compatibility types and severities, alternating and ordered by compatibility type.
+   */
+  @Nonnull
+  private final String[] _classification;
+  /**
+   * The keys and values of the emitted attachments, alternating and ordered by key.
+   */
+  @Nonnull
+  private final String[] _attachments;
+
+  private DifferenceRecord( @Nonnull final String reportKey,
+                            final long reportDigest,
+                            final long reportSequence,
+                            final int index,
+                            @Nonnull final String code,
+                            @Nonnull final String description,
+                            @Nullable final String newElement,
+                            @Nullable final String oldElement,
+                            @Nonnull final String[] classification,
+                            @Nonnull final String[] attachments )
+  {
+    _reportKey = Objects.requireNonNull( reportKey );
+    _reportDigest = reportDigest;
+    _reportSequence = reportSequence;
+    _index = index;
+    _code = Objects.requireNonNull( code );
+    _description = Objects.requireNonNull( description );
+    _newElement = newElement;
+    _oldElement = oldElement;
+    _classification = Objects.requireNonNull( classification );
+    _attachments = Objects.requireNonNull( attachments );
+  }
+
+  /**
+   * Render the elements of the report and sort its differences so that records can be created for them.
+   * This performs the expensive work of creating records and does not modify any shared state so that
+   * concurrent analyses can prepare reports without holding the lock of the collector.
+   * The elements of the report are rendered once and shared by every record.
+   *
+   * @param differences the differences of the report to be recorded.
+   */
+  @Nonnull
+  static PreparedReport prepare( @Nonnull final Report report, @Nonnull final List<Difference> differences )
+  {
+    final RenderedReport rendered = new RenderedReport( report );
+    // Sort differences so that the report is stable and will not churn version control
+    final List<Difference> sorted = KeyedSort.sort( differences, Main::toDescriptor );
+    final int size = sorted.size();
+    final String[] codes = new String[ size ];
+    final String[] descriptions = new String[ size ];
+    final String[][] classifications = new String[ size ][];
+    final String[][] attachments = new String[ size ][];
+    long digest = FNV_OFFSET_BASIS;
+    for ( int i = 0; i < size; i++ )
+    {
+      final Difference difference = sorted.get( i );
+      codes[ i ] = Objects.requireNonNull( difference.code );
+      descriptions[ i ] = Objects.requireNonNull( difference.description );
+      classifications[ i ] = toClassificationEntries( difference );
+      attachments[ i ] = toAttachmentEntries( difference );
+      digest = hash( hash( digest, codes[ i ] ), descriptions[ i ] );
+      digest = hash( hash( digest, classifications[ i ] ), attachments[ i ] );
+    }
+    return new PreparedReport( rendered.getKey(),
+                               digest,
+                               rendered.getNewElement(),
+                               rendered.getOldElement(),
+                               rendered.isElementUnchanged(),
+                               codes,
+                               descriptions,
+                               classifications,
+                               attachments );
+  }
+
+  /**
+   * Return the approximate number of bytes retained by the record excluding the strings, which are shared
+   * with other records and accounted for by the intern table.
+   */
+  long estimateSize()
+  {
+    return RECORD_OVERHEAD + 4L * ( _classification.length + _attachments.length );
+  }
+
+  @Nonnull
+  String getCode()
+  {
+    return _code;
+  }
+
+  @Nonnull
+  String getDescription()
+  {
+    return _description;
+  }
+
+  @Nullable
+  String getNewElement()
+  {
+    return _newElement;
+  }
+
+  @Nullable
+  String getOldElement()
+  {
+    return _oldElement;
+  }
+
+  /**
+   * Return true if the record has a new and old element that render identically.
+   * Such records share a single instance for both elements so the test does not compare the strings.
+   */
+  boolean isElementUnchanged()
+  {
+    return null != _newElement && _newElement == _oldElement;
+  }
+
+  @Nonnull
+  String[] getClassification()
+  {
+    return _classification;
+  }
+
+  @Nonnull
+  String[] getAttachments()
+  {
+    return _attachments;
+  }
+
+  void write( @Nonnull final DataOutput output )
+    throws IOException
+  {
+    writeString( output, _reportKey );
+    output.writeLong( _reportDigest );
+    output.writeLong( _reportSequence );
+    output.writeInt( _index );
+    writeString( output, _code );
+    writeString( output, _description );
+    writeString( output, _newElement );
+    if ( isElementUnchanged() )
+    {
+      output.writeInt( SAME_AS_NEW_ELEMENT );
+    }
+    else
+    {
+      writeString( output, _oldElement );
+    }
+    writeStrings( output, _classification );
+    writeStrings( output, _attachments );
+  }
+
+  @Nonnull
+  static DifferenceRecord read( @Nonnull final DataInput input )
+    throws IOException
+  {
+    final String reportKey = Objects.requireNonNull( readString( input ) );
+    final long reportDigest = input.readLong();
+    final long reportSequence = input.readLong();
+    final int index = input.readInt();
+    final String code = Objects.requireNonNull( readString( input ) );
+    final String description = Objects.requireNonNull( readString( input ) );
+    final String newElement = readString( input );
+    final int oldElementLength = input.readInt();
+    final String oldElement =
+      SAME_AS_NEW_ELEMENT == oldElementLength ? newElement : readString( input, oldElementLength );
+    return new DifferenceRecord( reportKey,
+                                 reportDigest,
+                                 reportSequence,
+                                 index,
+                                 code,
+                                 description,
+                                 newElement,
+                                 oldElement,
+                                 readStrings( input ),
+                                 readStrings( input ) );
+  }
+
+  /**
+   * Return the names of the compatibility types and severities of the difference, alternating and
+   * ordered by compatibility type. The names of enum constants are already shared so are not interned.
+   */
+  @Nonnull
+  private static String[] toClassificationEntries( @Nonnull final Difference difference )
+  {
+    final List<CompatibilityType> keys = Main.sortKeys( difference.classification );
+    final String[] entries = new String[ keys.size() * 2 ];
+    for ( int i = 0; i < keys.size(); i++ )
+    {
+      final CompatibilityType key = keys.get( i );
+      entries[ i * 2 ] = key.name();
+      entries[ i * 2 + 1 ] = difference.classification.get( key ).name();
+    }
+    return entries;
+  }
+
+  /**
+   * Return the keys and values of the attachments of the difference that are emitted in the report,
+   * alternating and ordered by key.
+   */
+  @Nonnull
+  private static String[] toAttachmentEntries( @Nonnull final Difference difference )
+  {
+    final List<String> entries = new ArrayList<>();
+    for ( final String key : Main.sortKeys( difference.attachments ) )
+    {
+      if ( !Main.ATTACHMENT_EXCLUDES.contains( key ) )
+      {
+        entries.add( key );
+        entries.add( difference.attachments.get( key ) );
+      }
+    }
+    return entries.toArray( new String[ 0 ] );
+  }
+
+  private static long hash( final long hash, @Nonnull final String[] values )
+  {
+    long result = hash( hash, String.valueOf( values.length ) );
+    for ( final String value : values )
+    {
+      result = hash( result, value );
+    }
+    return result;
+  }
+
+  /**
+   * Add the string to the FNV-1a hash. The length is added first so that the boundaries between
+   * consecutive strings contribute to the hash.
+   */
+  private static long hash( final long hash, @Nullable final String value )
+  {
+    final int length = null == value ? -1 : value.length();
+    long result = ( hash ^ length ) * FNV_PRIME;
+    for ( int i = 0; i < length; i++ )
+    {
+      result = ( result ^ value.charAt( i ) ) * FNV_PRIME;
+    }
+    return result;
+  }
+
+  private static void writeStrings( @Nonnull final DataOutput output, @Nonnull final String[] values )
+    throws IOException
+  {
+    output.writeInt( values.length );
+    for ( final String value : values )
+    {
+      writeString( output, value );
+    }
+  }
+
+  @Nonnull
+  private static String[] readStrings( @Nonnull final DataInput input )
+    throws IOException
+  {
+    final String[] values = new String[ input.readInt() ];
+    for ( int i = 0; i < values.length; i++ )
+    {
+      values[ i ] = readString( input );
+    }
+    return values;
+  }
+
+  /**
+   * Write the string as length-prefixed UTF-8 as DataOutput.writeUTF is limited to 64k.
+   */
+  private static void writeString( @Nonnull final DataOutput output, @Nullable final String value )
+    throws IOException
+  {
+    if ( null == value )
+    {
+      output.writeInt( -1 );
+    }
+    else
+    {
+      final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+      output.writeInt( bytes.length );
+      output.write( bytes );
+    }
+  }
+
+  @Nullable
+  private static String readString( @Nonnull final DataInput input )
+    throws IOException
+  {
+    return readString( input, input.readInt() );
+  }
+
+  @Nullable
+  private static String readString( @Nonnull final DataInput input, final int length )
+    throws IOException
+  {
+    if ( -1 == length )
+    {
+      return null;
+    }
+    final byte[] bytes = new byte[ length ];
+    input.readFully( bytes );
+    return new String( bytes, StandardCharsets.UTF_8 );
+  }
+  /**
+   * The rendered elements and sorted differences of a report from which records are created.
+   */
+  static final class PreparedReport
+  {
+    @Nonnull
+    private final String _reportKey;
+    private final long _reportDigest;
+    @Nullable
+    private final String _newElement;
+    @Nullable
+    private final String _oldElement;
+    private final boolean _elementUnchanged;
+    @Nonnull
+    private final String[] _codes;
+    @Nonnull
+    private final String[] _descriptions;
+    @Nonnull
+    private final String[][] _classifications;
+    @Nonnull
+    private final String[][] _attachments;
+
+    private PreparedReport( @Nonnull final String reportKey,
+                            final long reportDigest,
+                            @Nullable final String newElement,
+                            @Nullable final String oldElement,
+                            final boolean elementUnchanged,
+                            @Nonnull final String[] codes,
+                            @Nonnull final String[] descriptions,
+                            @Nonnull final String[][] classifications,
+                            @Nonnull final String[][] attachments )
+    {
+      _reportKey = Objects.requireNonNull( reportKey );
+      _reportDigest = reportDigest;
+      _newElement = newElement;
+      _oldElement = oldElement;
+      _elementUnchanged = elementUnchanged;
+      _codes = Objects.requireNonNull( codes );
+      _descriptions = Objects.requireNonNull( descriptions );
+      _classifications = Objects.requireNonNull( classifications );
+      _attachments = Objects.requireNonNull( attachments );
+    }
+
+    /**
+     * Create a record for each of the differences from the report, deduplicating the strings of the records.
+     * If the element is unchanged then the records share a single instance for the new and old element.
+     *
+     * @param reportSequence the order in which the report arrived, used to order reports with identical keys
+     *                       and digests.
+     * @param strings        the table used to deduplicate the strings in the records.
+     */
+    @Nonnull
+    List<DifferenceRecord> toRecords( final long reportSequence, @Nonnull final InternTable strings )
+    {
+      final String reportKey = Objects.requireNonNull( strings.intern( _reportKey ) );
+      final String newElement = strings.intern( _newElement );
+      final String oldElement = _elementUnchanged ? newElement : strings.intern( _oldElement );
+      final List<DifferenceRecord> records = new ArrayList<>( _codes.length );
+      for ( int i = 0; i < _codes.length; i++ )
+      {
+        final String[] attachments = _attachments[ i ];
+        for ( int j = 0; j < attachments.length; j++ )
+        {
+          attachments[ j ] = strings.intern( attachments[ j ] );
+        }
+        records.add( new DifferenceRecord( reportKey,
+                                           _reportDigest,
+                                           reportSequence,
+                                           i,
+                                           Objects.requireNonNull( strings.intern( _codes[ i ] ) ),
+                                           Objects.requireNonNull( strings.intern( _descriptions[ i ] ) ),
+                                           newElement,
+                                           oldElement,
+                                           _classifications[ i ],
+                                           attachments ) );
+      }
+      return records;
+    }
+  }
+}
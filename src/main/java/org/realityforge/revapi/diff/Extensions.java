@@ -0,0 +1,73 @@
+package org.realityforge.revapi.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nonnull;
+import org.revapi.ApiAnalyzer;
+import org.revapi.DifferenceTransform;
+import org.revapi.ElementFilter;
+import org.revapi.basic.ClassificationTransform;
+import org.revapi.basic.ConfigurableElementFilter;
+import org.revapi.basic.IgnoreDifferenceTransform;
+import org.revapi.basic.SemverIgnoreTransform;
+import org.revapi.java.JavaApiAnalyzer;
+import org.revapi.java.filters.AnnotatedElementFilter;
+import org.revapi.java.transforms.annotations.DownplayHarmlessAnnotationChanges;
+import org.revapi.java.transforms.annotations.NoLongerDeprecated;
+import org.revapi.java.transforms.annotations.NoLongerInherited;
+import org.revapi.java.transforms.annotations.NoLongerPresent;
+import org.revapi.java.transforms.annotations.NowDeprecated;
+import org.revapi.java.transforms.annotations.NowInherited;
+import org.revapi.java.transforms.methods.AnnotationTypeAttributeAdded;
+import org.revapi.java.transforms.methods.AnnotationTypeAttributeRemoved;
+
+/**
+ * The Revapi extensions that the tool requires. The extensions are those registered as services by the
+ * revapi-java and revapi-basic-features artifacts. They are registered explicitly so that the tool neither scans
+ * the classpath for service descriptors at startup nor depends upon the service descriptors of the artifacts
+ * surviving when they are merged into a single jar. Other extensions on the classpath are only discovered when
+ * the --discover-extensions option is specified. The extensions are listed in the order that they were
+ * discovered on the classpath.
+ */
+final class Extensions
+{
+  @Nonnull
+  static final List<Class<? extends ApiAnalyzer>> ANALYZERS =
+    Collections.singletonList( JavaApiAnalyzer.class );
+  @Nonnull
+  static final List<Class<? extends DifferenceTransform<?>>> TRANSFORMS = createTransforms();
+  @Nonnull
+  static final List<Class<? extends ElementFilter>> FILTERS = createFilters();
+
+  private Extensions()
+  {
+  }
+
+  @Nonnull
+  private static List<Class<? extends DifferenceTransform<?>>> createTransforms()
+  {
+    final List<Class<? extends DifferenceTransform<?>>> transforms = new ArrayList<>();
+    transforms.add( IgnoreDifferenceTransform.class );
+    transforms.add( ClassificationTransform.class );
+    transforms.add( SemverIgnoreTransform.class );
+    transforms.add( NoLongerDeprecated.class );
+    transforms.add( NoLongerInherited.class );
+    transforms.add( NoLongerPresent.class );
+    transforms.add( NowDeprecated.class );
+    transforms.add( NowInherited.class );
+    transforms.add( AnnotationTypeAttributeAdded.class );
+    transforms.add( AnnotationTypeAttributeRemoved.class );
+    transforms.add( DownplayHarmlessAnnotationChanges.class );
+    return Collections.unmodifiableList( transforms );
+  }
+
+  @Nonnull
+  private static List<Class<? extends ElementFilter>> createFilters()
+  {
+    final List<Class<? extends ElementFilter>> filters = new ArrayList<>();
+    filters.add( ConfigurableElementFilter.class );
+    filters.add( AnnotatedElementFilter.class );
+    return Collections.unmodifiableList( filters );
+  }
+}
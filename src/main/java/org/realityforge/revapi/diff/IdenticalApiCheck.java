@@ -0,0 +1,243 @@
+package org.realityforge.revapi.diff;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A pre-check that detects comparisons whose apis can not differ so that the analysis can be skipped.
+ * The apis can not differ if the old and new archives are byte-identical or if every class file that differs
+ * has the same public and protected signatures and the same fields. Revapi also reports some differences for
+ * elements that are unchanged, such as classes that are part of the API but not accessible, so the check only
+ * applies when the configuration and the filter exclude such differences.
+ */
+final class IdenticalApiCheck
+{
+  private static final String JAVA_EXTENSION = "revapi.java";
+  /**
+   * The code of the difference reported for unchanged classes that are part of the API but not accessible.
+   */
+  private static final String NON_PUBLIC_PART_OF_API_CODE = "java.class.nonPublicPartOfAPI";
+  /**
+   * The codes of the differences reported for unchanged elements that reference missing classes.
+   */
+  private static final List<String> MISSING_CLASS_CODES =
+    Collections.unmodifiableList( Arrays.asList( "java.missing.oldClass", "java.missing.newClass" ) );
+
+  private IdenticalApiCheck()
+  {
+  }
+
+  /**
+   * Return a description of why the apis are identical or null if the apis may differ.
+   */
+  @Nullable
+  static String check( @Nonnull final Comparison comparison, @Nonnull final ModelNode configuration )
+    throws IOException
+  {
+    if ( mayReportUnchanged( comparison, configuration ) )
+    {
+      return null;
+    }
+    else if ( !IncrementalFilter.hasSameContent( comparison.getOldSupportArchives(),
+                                                 comparison.getNewSupportArchives() ) )
+    {
+      return null;
+    }
+    else if ( IncrementalFilter.hasSameContent( comparison.getOldArchives(), comparison.getNewArchives() ) )
+    {
+      return "the old and new apis are byte-identical";
+    }
+    else if ( hasSameSignatures( comparison ) )
+    {
+      return "the old and new apis have identical signatures";
+    }
+    else
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Return true if the configuration and the filter of the comparison permit differences to be reported for
+   * classes whose public and protected signatures are unchanged.
+   */
+  static boolean mayReportUnchanged( @Nonnull final Comparison comparison, @Nonnull final ModelNode configuration )
+  {
+    final List<ModelNode> javaConfigurations = getJavaConfigurations( configuration );
+    if ( javaConfigurations.isEmpty() )
+    {
+      // The defaults report unchanged classes that are part of the API but not accessible
+      javaConfigurations.add( new ModelNode() );
+    }
+    for ( final ModelNode javaConfiguration : javaConfigurations )
+    {
+      if ( mayReportUnchanged( javaConfiguration, comparison.getFilter() ) || isJvmChangeDetection( javaConfiguration ) )
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Return true if the configuration and filter permit differences to be reported for unchanged elements
+   * or if the analysis of unchanged elements may fail.
+   */
+  private static boolean mayReportUnchanged( @Nonnull final ModelNode javaConfiguration,
+                                             @Nonnull final DifferenceFilter filter )
+  {
+    final ModelNode reportUnchanged = lookup( javaConfiguration, "checks", "nonPublicPartOfAPI", "reportUnchanged" );
+    if ( ( null == reportUnchanged || reportUnchanged.asBoolean() ) && filter.acceptsCode( NON_PUBLIC_PART_OF_API_CODE ) )
+    {
+      return true;
+    }
+    final ModelNode node = lookup( javaConfiguration, "missing-classes", "behavior" );
+    final String behavior = null != node ? node.asString() : "report";
+    if ( "error".equals( behavior ) )
+    {
+      // The analysis fails if a class is missing
+      return true;
+    }
+    else if ( "report".equals( behavior ) )
+    {
+      for ( final String code : MISSING_CLASS_CODES )
+      {
+        if ( filter.acceptsCode( code ) )
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Return true if the serialVersionUID check computes the default serialVersionUID as the JVM does,
+   * in which case changes to private methods may produce differences.
+   */
+  private static boolean isJvmChangeDetection( @Nonnull final ModelNode javaConfiguration )
+  {
+    final ModelNode changeDetection = lookup( javaConfiguration, "checks", "serialVersionUID", "changeDetection" );
+    return null != changeDetection && "jvm".equals( changeDetection.asString() );
+  }
+
+  /**
+   * Return true if the apis contain the same classes and every class file that differs has the same
+   * public and protected signatures and the same fields.
+   */
+  private static boolean hasSameSignatures( @Nonnull final Comparison comparison )
+    throws IOException
+  {
+    final List<ZipFile> zipFiles = new ArrayList<>();
+    try
+    {
+      final Map<String, ZipEntry> oldEntries = new HashMap<>();
+      final Map<String, ZipFile> oldEntryFiles = new HashMap<>();
+      collectEntries( comparison.getOldArchives(), zipFiles, oldEntries, oldEntryFiles );
+      final Map<String, ZipEntry> newEntries = new HashMap<>();
+      final Map<String, ZipFile> newEntryFiles = new HashMap<>();
+      collectEntries( comparison.getNewArchives(), zipFiles, newEntries, newEntryFiles );
+      if ( !oldEntries.keySet().equals( newEntries.keySet() ) )
+      {
+        return false;
+      }
+      for ( final Map.Entry<String, ZipEntry> e : newEntries.entrySet() )
+      {
+        final ZipEntry entry = e.getValue();
+        final ZipEntry oldEntry = oldEntries.get( e.getKey() );
+        if ( oldEntry.getCrc() != entry.getCrc() || oldEntry.getSize() != entry.getSize() )
+        {
+          final ClassSummary summary =
+            ClassSummary.parse( IncrementalFilter.readEntry( newEntryFiles.get( e.getKey() ), entry ) );
+          final ClassSummary oldSummary =
+            ClassSummary.parse( IncrementalFilter.readEntry( oldEntryFiles.get( e.getKey() ), oldEntry ) );
+          if ( !Arrays.equals( summary.getApiDigest(), oldSummary.getApiDigest() ) ||
+               !Arrays.equals( summary.getFieldDigest(), oldSummary.getFieldDigest() ) )
+          {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+    finally
+    {
+      for ( final ZipFile zipFile : zipFiles )
+      {
+        zipFile.close();
+      }
+    }
+  }
+
+  /**
+   * Collect the class entries of the archives where the first archive containing an entry takes precedence.
+   */
+  private static void collectEntries( @Nonnull final List<LabeledFileArchive> archives,
+                                      @Nonnull final List<ZipFile> zipFiles,
+                                      @Nonnull final Map<String, ZipEntry> entries,
+                                      @Nonnull final Map<String, ZipFile> entryFiles )
+    throws IOException
+  {
+    for ( final LabeledFileArchive archive : archives )
+    {
+      final ZipFile zipFile = new ZipFile( archive.getFile() );
+      zipFiles.add( zipFile );
+      for ( final ZipEntry entry : Collections.list( zipFile.entries() ) )
+      {
+        if ( IncrementalFilter.isClass( entry ) && null == entries.putIfAbsent( entry.getName(), entry ) )
+        {
+          entryFiles.put( entry.getName(), zipFile );
+        }
+      }
+    }
+  }
+
+  /**
+   * Return the configurations of the java extension.
+   */
+  @Nonnull
+  private static List<ModelNode> getJavaConfigurations( @Nonnull final ModelNode configuration )
+  {
+    final List<ModelNode> configurations = new ArrayList<>();
+    for ( final ModelNode extension : configuration.asList() )
+    {
+      final ModelNode name = lookup( extension, "extension" );
+      if ( null != name && JAVA_EXTENSION.equals( name.asString() ) )
+      {
+        final ModelNode javaConfiguration = lookup( extension, "configuration" );
+        configurations.add( null != javaConfiguration ? javaConfiguration : new ModelNode() );
+      }
+    }
+    return configurations;
+  }
+
+  /**
+   * Return the node at the path or null if it is not defined. Unlike ModelNode.get, this does not
+   * create the intermediate nodes.
+   */
+  @Nullable
+  private static ModelNode lookup( @Nullable final ModelNode node, @Nonnull final String... path )
+  {
+    ModelNode current = node;
+    for ( final String name : path )
+    {
+      if ( null == current || ModelType.OBJECT != current.getType() || !current.has( name ) )
+      {
+        return null;
+      }
+      current = current.get( name );
+    }
+    return null != current && current.isDefined() ? current : null;
+  }
+}
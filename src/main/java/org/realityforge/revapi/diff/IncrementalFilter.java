@@ -0,0 +1,332 @@
+package org.realityforge.revapi.diff;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.jboss.dmr.ModelNode;
+import org.revapi.AnalysisContext;
+
+/**
+ * A pre-analysis stage that determines which classes may contribute differences so that Revapi
+ * only needs to analyze those classes. The entries in the central directories of the old and new
+ * archives are compared by crc and size and only the classes whose entries differ are parsed to
+ * determine whether the parts of the class that contribute to the API have changed. The classes
+ * analyzed are the changed, added and removed classes plus the classes that extend or reference them.
+ * Revapi reports some differences for classes that are unchanged so the incremental analysis is only
+ * performed when the configuration excludes such differences, as in {@link IdenticalApiCheck}.
+ */
+final class IncrementalFilter
+{
+  private static final Logger c_logger = Logger.getGlobal();
+  private static final String CLASS_SUFFIX = ".class";
+  private static final String JAVA_EXTENSION = "revapi.java";
+  /**
+   * The maximum fraction of classes that can be affected before the incremental analysis is abandoned
+   * in favour of a full analysis as the cost of the pre-analysis would no longer be recouped.
+   */
+  private static final double MAX_AFFECTED_RATIO = 0.25;
+
+  private IncrementalFilter()
+  {
+  }
+
+  /**
+   * Return the names of the top-level classes that must be analyzed or null if a full analysis is required.
+   * An empty set indicates that the apis are identical.
+   *
+   * @param configuration the configuration of the analysis.
+   */
+  @Nullable
+  static Set<String> computeAffectedClasses( @Nonnull final Comparison comparison,
+                                             @Nonnull final ModelNode configuration )
+    throws IOException
+  {
+    if ( IdenticalApiCheck.mayReportUnchanged( comparison, configuration ) )
+    {
+      logFallback( "the configuration may report differences for unchanged classes" );
+      return null;
+    }
+    else if ( !hasSameContent( comparison.getOldSupportArchives(), comparison.getNewSupportArchives() ) )
+    {
+      logFallback( "the support archives differ" );
+      return null;
+    }
+
+    final Set<String> changed = new HashSet<>();
+    final Map<String, ClassSummary> summaries = new HashMap<>();
+    // The summaries of the classes in either api used to determine the top-level classes
+    final Map<String, ClassSummary> allSummaries = new HashMap<>();
+    final Set<String> newEntryNames = new HashSet<>();
+    int parsedCount = 0;
+    final List<ZipFile> oldFiles = new ArrayList<>();
+    try
+    {
+      final Map<String, ZipEntry> oldEntries = new HashMap<>();
+      final Map<String, ZipFile> oldEntryFiles = new HashMap<>();
+      for ( final LabeledFileArchive archive : comparison.getOldArchives() )
+      {
+        final ZipFile zipFile = new ZipFile( archive.getFile() );
+        oldFiles.add( zipFile );
+        for ( final ZipEntry entry : Collections.list( zipFile.entries() ) )
+        {
+          if ( isClass( entry ) && null == oldEntries.putIfAbsent( entry.getName(), entry ) )
+          {
+            oldEntryFiles.put( entry.getName(), zipFile );
+          }
+        }
+      }
+
+      for ( final LabeledFileArchive archive : comparison.getNewArchives() )
+      {
+        try ( final ZipFile zipFile = new ZipFile( archive.getFile() ) )
+        {
+          for ( final ZipEntry entry : Collections.list( zipFile.entries() ) )
+          {
+            if ( isClass( entry ) && newEntryNames.add( entry.getName() ) )
+            {
+              final ClassSummary summary = ClassSummary.parse( readEntry( zipFile, entry ) );
+              summaries.put( summary.getName(), summary );
+              final ZipEntry oldEntry = oldEntries.get( entry.getName() );
+              if ( null == oldEntry )
+              {
+                changed.add( summary.getName() );
+              }
+              else if ( oldEntry.getCrc() != entry.getCrc() || oldEntry.getSize() != entry.getSize() )
+              {
+                parsedCount++;
+                final ClassSummary oldSummary =
+                  ClassSummary.parse( readEntry( oldEntryFiles.get( entry.getName() ), oldEntry ) );
+                if ( !Arrays.equals( summary.getApiDigest(), oldSummary.getApiDigest() ) )
+                {
+                  changed.add( summary.getName() );
+                }
+              }
+            }
+          }
+        }
+      }
+      allSummaries.putAll( summaries );
+      for ( final Map.Entry<String, ZipEntry> entry : oldEntries.entrySet() )
+      {
+        if ( !newEntryNames.contains( entry.getKey() ) )
+        {
+          // Removed classes are parsed to determine the class that encloses them
+          final ClassSummary summary =
+            ClassSummary.parse( readEntry( oldEntryFiles.get( entry.getKey() ), entry.getValue() ) );
+          changed.add( summary.getName() );
+          allSummaries.put( summary.getName(), summary );
+        }
+      }
+    }
+    finally
+    {
+      for ( final ZipFile zipFile : oldFiles )
+      {
+        zipFile.close();
+      }
+    }
+
+    final Set<String> topLevelClasses = new HashSet<>();
+    for ( final String name : allSummaries.keySet() )
+    {
+      topLevelClasses.add( ClassSummary.getTopLevelName( name, allSummaries ) );
+    }
+    final Set<String> affected = new TreeSet<>();
+    for ( final String name : collectDependents( changed, summaries ) )
+    {
+      affected.add( ClassSummary.getTopLevelName( name, allSummaries ) );
+    }
+    if ( c_logger.isLoggable( Level.FINE ) )
+    {
+      c_logger.log( Level.INFO,
+                    "Incremental analysis found " + changed.size() + " changed classes after comparing " +
+                    parsedCount + " modified class files affecting " + affected.size() + " of " +
+                    topLevelClasses.size() + " top-level classes" );
+    }
+    if ( affected.size() > topLevelClasses.size() * MAX_AFFECTED_RATIO )
+    {
+      logFallback( "too many classes are affected" );
+      return null;
+    }
+    return affected;
+  }
+
+  /**
+   * Return a copy of the context that restricts the analysis to the specified top-level classes and
+   * their nested classes or null if the configuration already restricts the classes analyzed.
+   */
+  @Nullable
+  static AnalysisContext restrict( @Nonnull final AnalysisContext context, @Nonnull final Set<String> classes )
+  {
+    final ModelNode configuration = context.getConfiguration().clone();
+    ModelNode javaConfiguration = null;
+    for ( final ModelNode extension : configuration.asList() )
+    {
+      if ( JAVA_EXTENSION.equals( extension.get( "extension" ).asString() ) )
+      {
+        if ( null != javaConfiguration || extension.get( "configuration" ).has( "filter" ) )
+        {
+          logFallback( "the configuration already filters the classes analyzed" );
+          return null;
+        }
+        javaConfiguration = extension.get( "configuration" );
+      }
+    }
+    if ( null == javaConfiguration )
+    {
+      final ModelNode extension = configuration.add();
+      extension.get( "extension" ).set( JAVA_EXTENSION );
+      javaConfiguration = extension.get( "configuration" );
+    }
+    final ModelNode filter = javaConfiguration.get( "filter", "classes" );
+    filter.get( "regex" ).set( true );
+    filter.get( "include" ).add( toPattern( classes ) );
+
+    return context.copyWithConfiguration( configuration );
+  }
+
+  /**
+   * Return a single pattern that matches the canonical names of the classes and their nested classes.
+   */
+  @Nonnull
+  private static String toPattern( @Nonnull final Set<String> classes )
+  {
+    final StringBuilder sb = new StringBuilder( "(?:" );
+    boolean first = true;
+    for ( final String name : classes )
+    {
+      if ( !first )
+      {
+        sb.append( '|' );
+      }
+      first = false;
+      sb.append( Pattern.quote( name ) );
+    }
+    return sb.append( ")(?:\\..+)?" ).toString();
+  }
+
+  /**
+   * Return the changed classes plus the classes that transitively extend them and the classes that
+   * directly reference the changed classes or their subtypes.
+   */
+  @Nonnull
+  private static Set<String> collectDependents( @Nonnull final Set<String> changed,
+                                                @Nonnull final Map<String, ClassSummary> summaries )
+  {
+    final Map<String, List<String>> subtypes = new HashMap<>();
+    final Map<String, List<String>> referencers = new HashMap<>();
+    for ( final ClassSummary summary : summaries.values() )
+    {
+      final List<String> supertypes = new ArrayList<>( summary.getInterfaces() );
+      if ( null != summary.getSuperName() )
+      {
+        supertypes.add( summary.getSuperName() );
+      }
+      for ( final String supertype : supertypes )
+      {
+        subtypes.computeIfAbsent( supertype, k -> new ArrayList<>() ).add( summary.getName() );
+      }
+      for ( final String reference : summary.getReferences() )
+      {
+        referencers.computeIfAbsent( reference, k -> new ArrayList<>() ).add( summary.getName() );
+      }
+    }
+
+    final Set<String> types = new HashSet<>( changed );
+    final Deque<String> queue = new ArrayDeque<>( changed );
+    while ( !queue.isEmpty() )
+    {
+      for ( final String subtype : subtypes.getOrDefault( queue.pop(), Collections.emptyList() ) )
+      {
+        if ( types.add( subtype ) )
+        {
+          queue.add( subtype );
+        }
+      }
+    }
+    final Set<String> dependents = new HashSet<>( types );
+    for ( final String type : types )
+    {
+      dependents.addAll( referencers.getOrDefault( type, Collections.emptyList() ) );
+    }
+    return dependents;
+  }
+
+  static boolean hasSameContent( @Nonnull final List<LabeledFileArchive> archives1,
+                                 @Nonnull final List<LabeledFileArchive> archives2 )
+    throws IOException
+  {
+    if ( archives1.size() != archives2.size() )
+    {
+      return false;
+    }
+    for ( int i = 0; i < archives1.size(); i++ )
+    {
+      final LabeledFileArchive archive1 = archives1.get( i );
+      final LabeledFileArchive archive2 = archives2.get( i );
+      // Support archives shared between the old and new apis need not be read
+      if ( archive1 != archive2 && !Arrays.equals( archive1.getDigest(), archive2.getDigest() ) )
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static boolean isClass( @Nonnull final ZipEntry entry )
+  {
+    final String name = entry.getName();
+    return name.endsWith( CLASS_SUFFIX ) &&
+           !name.startsWith( "META-INF/" ) &&
+           !name.endsWith( "module-info.class" );
+  }
+
+  @Nonnull
+  static String toClassName( @Nonnull final String entryName )
+  {
+    return entryName.substring( 0, entryName.length() - CLASS_SUFFIX.length() ).replace( '/', '.' );
+  }
+
+  @Nonnull
+  static byte[] readEntry( @Nonnull final ZipFile zipFile, @Nonnull final ZipEntry entry )
+    throws IOException
+  {
+    final long size = entry.getSize();
+    if ( size < 0 || size > Integer.MAX_VALUE )
+    {
+      throw new IOException( "Unable to determine size of " + entry.getName() );
+    }
+    final byte[] data = new byte[ (int) size ];
+    try ( final InputStream input = zipFile.getInputStream( entry ) )
+    {
+      new DataInputStream( input ).readFully( data );
+    }
+    return data;
+  }
+
+  private static void logFallback( @Nonnull final String reason )
+  {
+    if ( c_logger.isLoggable( Level.FINE ) )
+    {
+      c_logger.log( Level.INFO, "Performing full analysis as " + reason );
+    }
+  }
+}
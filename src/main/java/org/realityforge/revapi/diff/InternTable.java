@@ -0,0 +1,58 @@
+package org.realityforge.revapi.diff;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A table used to deduplicate strings so that equal strings collected during a comparison share a single instance.
+ * The table is not thread-safe.
+ */
+final class InternTable
+{
+  /**
+   * The approximate number of bytes retained by a string and its table entry excluding the characters.
+   */
+  private static final int STRING_OVERHEAD = 80;
+  private final Map<String, String> _strings = new HashMap<>();
+  private long _retainedSize;
+
+  /**
+   * Return the canonical instance of the string.
+   */
+  @Nullable
+  String intern( @Nullable final String value )
+  {
+    if ( null == value )
+    {
+      return null;
+    }
+    final String existing = _strings.putIfAbsent( value, value );
+    if ( null == existing )
+    {
+      _retainedSize += STRING_OVERHEAD + 2L * value.length();
+      return value;
+    }
+    else
+    {
+      return existing;
+    }
+  }
+
+  /**
+   * Return the approximate number of bytes retained by the strings in the table.
+   */
+  long getRetainedSize()
+  {
+    return _retainedSize;
+  }
+
+  /**
+   * Remove all strings from the table.
+   */
+  void clear()
+  {
+    _strings.clear();
+    _retainedSize = 0;
+  }
+}
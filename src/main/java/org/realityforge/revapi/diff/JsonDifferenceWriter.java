@@ -0,0 +1,180 @@
+package org.realityforge.revapi.diff;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Writes differences as json objects, either enclosed in an array or as a sequence of top-level values.
+ */
+final class JsonDifferenceWriter
+  implements ReportWriter
+{
+  @Nonnull
+  private final JsonReportWriter _writer;
+  private final boolean _array;
+
+  JsonDifferenceWriter( @Nonnull final JsonReportWriter writer, final boolean array )
+  {
+    _writer = Objects.requireNonNull( writer );
+    _array = array;
+  }
+
+  @Override
+  public void writeStart()
+    throws IOException
+  {
+    if ( _array )
+    {
+      _writer.writeStartArray();
+    }
+  }
+
+  @Override
+  public void writeDifference( @Nonnull final String code,
+                               @Nonnull final String description,
+                               @Nullable final String newElement,
+                               @Nullable final String oldElement,
+                               @Nonnull final String[] classification,
+                               @Nonnull final String[] attachments )
+    throws IOException
+  {
+    _writer.writeStartObject();
+    _writer.write( "code", code );
+    _writer.write( "description", description );
+    if ( null != oldElement && null != newElement && newElement.equals( oldElement ) )
+    {
+      _writer.write( "element", newElement );
+    }
+    else
+    {
+      if ( null != newElement )
+      {
+        _writer.write( "newElement", newElement );
+      }
+      if ( null != oldElement )
+      {
+        _writer.write( "oldElement", oldElement );
+      }
+    }
+    writeEntries( "classification", classification );
+    writeEntries( "attachments", attachments );
+    _writer.writeEnd();
+  }
+
+  @Nonnull
+  @Override
+  public ShardEncoder getShardEncoder()
+  {
+    return new JsonShardEncoder();
+  }
+
+  @Override
+  public void writeEnd()
+    throws IOException
+  {
+    if ( _array )
+    {
+      _writer.writeEnd();
+    }
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    _writer.close();
+  }
+
+  private void writeEntries( @Nonnull final String name, @Nonnull final String[] entries )
+    throws IOException
+  {
+    _writer.writeStartObject( name );
+    for ( int i = 0; i < entries.length; i += 2 )
+    {
+      _writer.write( entries[ i ], entries[ i + 1 ] );
+    }
+    _writer.writeEnd();
+  }
+
+  /**
+   * Encodes each shard using a separate writer that shares the layout of this writer and writes the encoded
+   * shards directly to the report.
+   */
+  private final class JsonShardEncoder
+    implements ShardEncoder
+  {
+    @Nonnull
+    @Override
+    public byte[] encode( @Nonnull final List<DifferenceRecord> records, final boolean first )
+      throws IOException
+    {
+      final StringBuilderWriter output = new StringBuilderWriter();
+      final JsonDifferenceWriter writer = new JsonDifferenceWriter( _writer.createFragment( output, first ), _array );
+      for ( final DifferenceRecord record : records )
+      {
+        writer.writeDifference( record.getCode(),
+                                record.getDescription(),
+                                record.getNewElement(),
+                                record.getOldElement(),
+                                record.getClassification(),
+                                record.getAttachments() );
+      }
+      return JsonReportWriter.encode( output._buffer );
+    }
+
+    @Override
+    public void write( @Nonnull final byte[] shard )
+      throws IOException
+    {
+      _writer.writeEncoded( shard );
+    }
+  }
+
+  /**
+   * An unsynchronized writer that accumulates the characters of a shard.
+   */
+  private static final class StringBuilderWriter
+    extends Writer
+  {
+    @Nonnull
+    private final StringBuilder _buffer = new StringBuilder();
+
+    @Override
+    public void write( final int c )
+    {
+      _buffer.append( (char) c );
+    }
+
+    @Override
+    public void write( @Nonnull final char[] chars, final int offset, final int length )
+    {
+      _buffer.append( chars, offset, length );
+    }
+
+    @Override
+    public void write( @Nonnull final String value, final int offset, final int length )
+    {
+      _buffer.append( value, offset, offset + length );
+    }
+
+    @Override
+    public void write( @Nonnull final String value )
+    {
+      _buffer.append( value );
+    }
+
+    @Override
+    public void flush()
+    {
+    }
+
+    @Override
+    public void close()
+    {
+    }
+  }
+}
@@ -0,0 +1,300 @@
+package org.realityforge.revapi.diff;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A minimal streaming json writer that directly emits the 2-space layout used by the reports.
+ * The output is byte-identical to pretty printing with the javax.json generator and then
+ * re-indenting the result, including the trailing newline after the outermost container.
+ * Only the subset of json required by the reports (containers, string values and integer values) is supported.
+ * In compact mode no whitespace is emitted other than a newline after each top-level value so that
+ * a sequence of top-level values produces newline delimited json.
+ * Fragments of a document can be encoded independently by writers created via {@link #createFragment(Writer, boolean)}
+ * and then appended in order via {@link #writeEncoded(byte[])}.
+ */
+final class JsonReportWriter
+  implements Closeable
+{
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  @Nonnull
+  private final Writer _writer;
+  /**
+   * The channel that the writer encodes into, or null if the writer does not write to a file.
+   */
+  @Nullable
+  private final FileChannel _channel;
+  private final boolean _compact;
+  /**
+   * The closing characters of the currently open containers.
+   */
+  @Nonnull
+  private final StringBuilder _containers = new StringBuilder();
+  /**
+   * Flag set to true when no value has been written into the current container.
+   */
+  private boolean _first = true;
+
+  JsonReportWriter( @Nonnull final Writer writer, final boolean compact )
+  {
+    this( writer, null, compact );
+  }
+
+  private JsonReportWriter( @Nonnull final Writer writer, @Nullable final FileChannel channel, final boolean compact )
+  {
+    _writer = Objects.requireNonNull( writer );
+    _channel = channel;
+    _compact = compact;
+  }
+
+  @Nonnull
+  static JsonReportWriter create( @Nonnull final Path path, final boolean compact )
+    throws IOException
+  {
+    final FileChannel channel =
+      FileChannel.open( path,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING );
+    final Writer writer = Channels.newWriter( channel, newEncoder(), BUFFER_SIZE );
+    return new JsonReportWriter( new BufferedWriter( writer, BUFFER_SIZE ), channel, compact );
+  }
+
+  /**
+   * Create a writer that emits values into the specified writer as if they were written by this writer at its
+   * current position. Concatenating the output of consecutive fragments produces the same characters as writing
+   * the values directly through this writer. The fragment only reads the state of this writer when created.
+   *
+   * @param first true if the fragment starts with the first value of the current container.
+   */
+  @Nonnull
+  JsonReportWriter createFragment( @Nonnull final Writer writer, final boolean first )
+  {
+    final JsonReportWriter fragment = new JsonReportWriter( writer, _compact );
+    fragment._containers.append( _containers );
+    fragment._first = first;
+    return fragment;
+  }
+
+  /**
+   * Encode the characters of a fragment using the same encoding as the report file.
+   */
+  @Nonnull
+  static byte[] encode( @Nonnull final CharSequence fragment )
+    throws CharacterCodingException
+  {
+    final ByteBuffer buffer = newEncoder().encode( CharBuffer.wrap( fragment ) );
+    final byte[] bytes = new byte[ buffer.remaining() ];
+    buffer.get( bytes );
+    return bytes;
+  }
+
+  /**
+   * Append the encoded values of a fragment created from this writer to the output.
+   * The values are considered to have been written into the current container.
+   */
+  void writeEncoded( @Nonnull final byte[] fragment )
+    throws IOException
+  {
+    if ( null == _channel )
+    {
+      throw new IllegalStateException( "Writer does not write to a file" );
+    }
+    _writer.flush();
+    final ByteBuffer buffer = ByteBuffer.wrap( fragment );
+    while ( buffer.hasRemaining() )
+    {
+      _channel.write( buffer );
+    }
+    _first = false;
+  }
+
+  void writeStartArray()
+    throws IOException
+  {
+    writeValuePrefix();
+    startContainer( '[', ']' );
+  }
+
+  void writeStartArray( @Nonnull final String name )
+    throws IOException
+  {
+    writeNamePrefix( name );
+    startContainer( '[', ']' );
+  }
+
+  void writeStartObject()
+    throws IOException
+  {
+    writeValuePrefix();
+    startContainer( '{', '}' );
+  }
+
+  void writeStartObject( @Nonnull final String name )
+    throws IOException
+  {
+    writeNamePrefix( name );
+    startContainer( '{', '}' );
+  }
+
+  void write( @Nonnull final String name, @Nonnull final String value )
+    throws IOException
+  {
+    writeNamePrefix( name );
+    writeString( value );
+  }
+
+  void write( @Nonnull final String name, final long value )
+    throws IOException
+  {
+    writeNamePrefix( name );
+    _writer.write( Long.toString( value ) );
+  }
+
+  void writeEnd()
+    throws IOException
+  {
+    final int depth = _containers.length() - 1;
+    final char closer = _containers.charAt( depth );
+    _containers.setLength( depth );
+    writeNewLine();
+    _writer.write( closer );
+    _first = false;
+    if ( 0 == depth )
+    {
+      _writer.write( '\n' );
+    }
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    _writer.close();
+  }
+
+  /**
+   * Replace malformed input to match the behaviour of the javax.json generator.
+   */
+  @Nonnull
+  private static CharsetEncoder newEncoder()
+  {
+    return StandardCharsets.UTF_8
+      .newEncoder()
+      .onMalformedInput( CodingErrorAction.REPLACE )
+      .onUnmappableCharacter( CodingErrorAction.REPLACE );
+  }
+
+  private void startContainer( final char opener, final char closer )
+    throws IOException
+  {
+    _writer.write( opener );
+    _containers.append( closer );
+    _first = true;
+  }
+
+  private void writeNamePrefix( @Nonnull final String name )
+    throws IOException
+  {
+    writeValuePrefix();
+    writeString( name );
+    _writer.write( _compact ? ":" : ": " );
+  }
+
+  private void writeValuePrefix()
+    throws IOException
+  {
+    if ( 0 != _containers.length() )
+    {
+      if ( !_first )
+      {
+        _writer.write( ',' );
+      }
+      writeNewLine();
+      _first = false;
+    }
+  }
+
+  private void writeNewLine()
+    throws IOException
+  {
+    if ( _compact )
+    {
+      return;
+    }
+    _writer.write( '\n' );
+    for ( int i = _containers.length(); i > 0; i-- )
+    {
+      _writer.write( "  " );
+    }
+  }
+
+  private void writeString( @Nonnull final String value )
+    throws IOException
+  {
+    _writer.write( '"' );
+    final int length = value.length();
+    int start = 0;
+    for ( int i = 0; i < length; i++ )
+    {
+      final char c = value.charAt( i );
+      if ( c < 0x20 || '"' == c || '\\' == c )
+      {
+        _writer.write( value, start, i - start );
+        writeEscaped( c );
+        start = i + 1;
+      }
+    }
+    _writer.write( value, start, length - start );
+    _writer.write( '"' );
+  }
+
+  private void writeEscaped( final char c )
+    throws IOException
+  {
+    switch ( c )
+    {
+      case '"':
+        _writer.write( "\\\"" );
+        break;
+      case '\\':
+        _writer.write( "\\\\" );
+        break;
+      case '\b':
+        _writer.write( "\\b" );
+        break;
+      case '\f':
+        _writer.write( "\\f" );
+        break;
+      case '\n':
+        _writer.write( "\\n" );
+        break;
+      case '\r':
+        _writer.write( "\\r" );
+        break;
+      case '\t':
+        _writer.write( "\\t" );
+        break;
+      default:
+        _writer.write( "\\u00" );
+        _writer.write( HEX[ c >> 4 ] );
+        _writer.write( HEX[ c & 0xF ] );
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package org.realityforge.revapi.diff;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import javax.annotation.Nonnull;
+
+/**
+ * Decorate-sort-undecorate utility that computes the sort key of each element exactly once.
+ * The sort is stable so elements with identical keys retain their original relative order.
+ */
+final class KeyedSort
+{
+  private KeyedSort()
+  {
+  }
+
+  @Nonnull
+  static <T> List<T> sort( @Nonnull final Collection<T> values, @Nonnull final Function<? super T, String> keyFn )
+  {
+    final int size = values.size();
+    if ( size < 2 )
+    {
+      return new ArrayList<>( values );
+    }
+    final List<Entry<T>> entries = new ArrayList<>( size );
+    for ( final T value : values )
+    {
+      entries.add( new Entry<>( keyFn.apply( value ), value ) );
+    }
+    entries.sort( Comparator.comparing( e -> e._key ) );
+    final List<T> results = new ArrayList<>( size );
+    for ( final Entry<T> entry : entries )
+    {
+      results.add( entry._value );
+    }
+    return results;
+  }
+
+  private static final class Entry<T>
+  {
+    @Nonnull
+    private final String _key;
+    private final T _value;
+
+    Entry( @Nonnull final String key, final T value )
+    {
+      _key = key;
+      _value = value;
+    }
+  }
+}
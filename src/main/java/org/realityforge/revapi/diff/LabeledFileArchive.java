@@ -4,10 +4,21 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Objects;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.revapi.Archive;
 
+/**
+ * An archive backed by a file that is memory-mapped on first access.
+ * Every stream opened from the archive is an independent view of the same mapped region so
+ * opening the archive multiple times does not re-read the file from disk.
+ */
 final class LabeledFileArchive
   implements Archive
 {
@@ -15,6 +26,10 @@ final class LabeledFileArchive
   private final String _name;
   @Nonnull
   private final File _file;
+  @Nullable
+  private ByteBuffer _buffer;
+  @Nullable
+  private byte[] _digest;
 
   LabeledFileArchive( @Nonnull final String name, @Nonnull final File file )
   {
@@ -34,7 +49,8 @@ final class LabeledFileArchive
   public InputStream openStream()
     throws IOException
   {
-    return new FileInputStream( _file );
+    final ByteBuffer buffer = getBuffer();
+    return null != buffer ? new ByteBufferInputStream( buffer ) : new FileInputStream( _file );
   }
 
   @Nonnull
@@ -42,4 +58,82 @@ final class LabeledFileArchive
   {
     return _file;
   }
+
+  /**
+   * Return the SHA-256 digest of the contents of the archive, computing it on first access.
+   */
+  @Nonnull
+  synchronized byte[] getDigest()
+    throws IOException
+  {
+    if ( null == _digest )
+    {
+      final MessageDigest digest = newDigest();
+      final ByteBuffer buffer = getBuffer();
+      if ( null != buffer )
+      {
+        digest.update( buffer );
+      }
+      else
+      {
+        final byte[] data = new byte[ 64 * 1024 ];
+        try ( final InputStream input = new FileInputStream( _file ) )
+        {
+          int count;
+          while ( -1 != ( count = input.read( data ) ) )
+          {
+            digest.update( data, 0, count );
+          }
+        }
+      }
+      _digest = digest.digest();
+    }
+    return _digest;
+  }
+
+  /**
+   * Supply the digest of the contents of the archive when it is already known, such as from a persistent index.
+   */
+  synchronized void setDigest( @Nonnull final byte[] digest )
+  {
+    if ( null == _digest )
+    {
+      _digest = Objects.requireNonNull( digest );
+    }
+  }
+
+  /**
+   * Return a new view of the mapped file or null if the file is too large to be mapped as a single region.
+   */
+  @Nullable
+  private synchronized ByteBuffer getBuffer()
+    throws IOException
+  {
+    if ( null == _buffer )
+    {
+      try ( final FileChannel channel = FileChannel.open( _file.toPath(), StandardOpenOption.READ ) )
+      {
+        final long size = channel.size();
+        if ( size > Integer.MAX_VALUE )
+        {
+          return null;
+        }
+        _buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+      }
+    }
+    return _buffer.duplicate();
+  }
+
+  @Nonnull
+  private static MessageDigest newDigest()
+  {
+    try
+    {
+      return MessageDigest.getInstance( "SHA-256" );
+    }
+    catch ( final NoSuchAlgorithmException e )
+    {
+      throw new IllegalStateException( e );
+    }
+  }
 }
@@ -1,11 +1,9 @@
 package org.realityforge.revapi.diff;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -13,27 +11,30 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.json.Json;
-import javax.json.stream.JsonGenerator;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonString;
 import org.realityforge.getopt4j.CLArgsParser;
 import org.realityforge.getopt4j.CLOption;
 import org.realityforge.getopt4j.CLOptionDescriptor;
 import org.realityforge.getopt4j.CLUtil;
-import org.revapi.API;
 import org.revapi.AnalysisContext;
 import org.revapi.AnalysisResult;
-import org.revapi.CompatibilityType;
 import org.revapi.Difference;
-import org.revapi.Element;
-import org.revapi.Report;
-import org.revapi.Reporter;
+import org.revapi.DifferenceSeverity;
 import org.revapi.Revapi;
-import org.revapi.simple.FileArchive;
 
 /**
  * The entry point in which to run the tool.
@@ -49,7 +50,38 @@ public class Main
   private static final int NEW_API_OPT = 5;
   private static final int NEW_API_SUPPORT_OPT = 6;
   private static final int EXPECT_NO_DIFFERENCES_OPT = 7;
+  private static final int BATCH_OPT = 8;
+  private static final int THREADS_OPT = 9;
+  private static final int NO_CACHE_OPT = 10;
+  private static final int CACHE_DIR_OPT = 11;
+  private static final int DAEMON_OPT = 12;
+  private static final int CLIENT_OPT = 13;
+  private static final int PORT_OPT = 14;
+  private static final int IDLE_TIMEOUT_OPT = 15;
+  private static final int INCREMENTAL_OPT = 16;
+  private static final int STATS_FILE_OPT = 17;
+  private static final int STREAMING_OPT = 18;
+  private static final int BUFFER_SIZE_OPT = 19;
+  private static final int FORMAT_OPT = 20;
+  private static final int BASELINE_OPT = 21;
+  private static final int TIMELINE_OPT = 22;
+  private static final int MAX_HEAP_BUDGET_OPT = 23;
+  private static final int CHECK_OPT = 24;
+  private static final int MIN_SEVERITY_OPT = 25;
+  private static final int INCLUDE_CODE_OPT = 26;
+  private static final int EXCLUDE_CODE_OPT = 27;
+  private static final int INCLUDE_PACKAGE_OPT = 28;
+  private static final int PARTITION_BY_PACKAGE_OPT = 29;
+  private static final int TOKEN_FILE_OPT = 30;
+  private static final int DISCOVER_EXTENSIONS_OPT = 31;
   private static final int OUTPUT_OPT = 'o';
+  private static final int DEFAULT_PORT = 7373;
+  private static final int DEFAULT_IDLE_TIMEOUT = 600;
+  /**
+   * The number of milliseconds a client of the daemon may take to send its request.
+   */
+  private static final int DAEMON_REQUEST_TIMEOUT = 30 * 1000;
+  private static final int DEFAULT_BUFFER_SIZE = 10000;
 
   private static final CLOptionDescriptor[] OPTIONS = new CLOptionDescriptor[]{
     new CLOptionDescriptor( "help",
@@ -86,7 +118,7 @@ public class Main
     new CLOptionDescriptor( "new-api-support",
                             CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
                             NEW_API_SUPPORT_OPT,
-                            "Specify the path to a jar to referenced by the new-api but not part of the analysis. May be specified multiple times." ),
+                            "Specify the path to a jar to referenced by the new-api but not part of the analysis. May be specified multiple times. A jar identical to an old-api-support jar with the same label is only read once, although Revapi still parses its classes separately for each api." ),
     new CLOptionDescriptor( "output-file",
                             CLOptionDescriptor.ARGUMENT_REQUIRED,
                             OUTPUT_OPT,
@@ -94,271 +126,957 @@ public class Main
     new CLOptionDescriptor( "expect-no-differences",
                             CLOptionDescriptor.ARGUMENT_DISALLOWED,
                             EXPECT_NO_DIFFERENCES_OPT,
-                            "Return exit code of 1 if API differences are detected." )
+                            "Return exit code of 1 if API differences are detected." ),
+    new CLOptionDescriptor( "batch",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            BATCH_OPT,
+                            "Specify the path to a json manifest listing multiple comparisons to perform. Each entry is an object with the keys old-api, old-api-support, new-api, new-api-support, config-file, output-file and baseline that mirror the command line options.",
+                            new int[]{ OLD_API_OPT, OLD_API_SUPPORT_OPT, NEW_API_OPT, NEW_API_SUPPORT_OPT, OUTPUT_OPT } ),
+    new CLOptionDescriptor( "threads",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            THREADS_OPT,
+                            "The number of comparisons from the batch manifest or timeline to perform concurrently. Defaults to 1 for a batch manifest and to the number of processors for a timeline." ),
+    new CLOptionDescriptor( "no-cache",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            NO_CACHE_OPT,
+                            "Always perform the analysis rather than reusing the report from a previous identical comparison.",
+                            new int[]{ CACHE_DIR_OPT } ),
+    new CLOptionDescriptor( "cache-dir",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            CACHE_DIR_OPT,
+                            "The directory in which to cache reports. Defaults to ~/.cache/revapi-diff.",
+                            new int[]{ NO_CACHE_OPT } ),
+    new CLOptionDescriptor( "daemon",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            DAEMON_OPT,
+                            "Start a daemon that performs the comparisons requested by clients on the local machine.",
+                            new int[]{ OLD_API_OPT,
+                                       OLD_API_SUPPORT_OPT,
+                                       NEW_API_OPT,
+                                       NEW_API_SUPPORT_OPT,
+                                       OUTPUT_OPT,
+                                       BATCH_OPT,
+                                       CLIENT_OPT } ),
+    new CLOptionDescriptor( "client",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            CLIENT_OPT,
+                            "Request that a running daemon performs the comparison rather than performing it in this process.",
+                            new int[]{ BATCH_OPT, DAEMON_OPT } ),
+    new CLOptionDescriptor( "port",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            PORT_OPT,
+                            "The port on the loopback interface used by the daemon. Defaults to " + DEFAULT_PORT + "." ),
+    new CLOptionDescriptor( "token-file",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            TOKEN_FILE_OPT,
+                            "The file in which the daemon writes the token that clients must present, readable only by the user that started the daemon. Defaults to daemon-<port>.token in ~/.cache/revapi-diff." ),
+    new CLOptionDescriptor( "idle-timeout",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            IDLE_TIMEOUT_OPT,
+                            "The number of seconds without a request after which the daemon shuts down. Defaults to " +
+                            DEFAULT_IDLE_TIMEOUT + "." ),
+    new CLOptionDescriptor( "incremental",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            INCREMENTAL_OPT,
+                            "Only analyze the classes whose api has changed and the classes that depend upon them. A full analysis is performed if too many classes are affected or if the configuration may report differences for unchanged classes." ),
+    new CLOptionDescriptor( "stats-file",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            STATS_FILE_OPT,
+                            "The output file in which to write the time and memory consumed by each phase of the tool." ),
+    new CLOptionDescriptor( "streaming",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            STREAMING_OPT,
+                            "Spill sorted difference records to temporary files whenever the buffer is full so that the memory consumed by the differences is bounded by the buffer size." ),
+    new CLOptionDescriptor( "buffer-size",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            BUFFER_SIZE_OPT,
+                            "The number of differences buffered in memory before they are spilled to disk when streaming. Defaults to " +
+                            DEFAULT_BUFFER_SIZE + "." ),
+    new CLOptionDescriptor( "format",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            FORMAT_OPT,
+                            "The format of the output file. One of json, ndjson or binary. Defaults to json." ),
+    new CLOptionDescriptor( "baseline",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            BASELINE_OPT,
+                            "A json report from a previous comparison. Only the differences not present in the baseline are emitted and the tool exits with a non-zero exit code only if there are new differences." ),
+    new CLOptionDescriptor( "timeline",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            TIMELINE_OPT,
+                            "Compare each pair of consecutive apis supplied as arguments. A report for each pair is written to the directory containing the output file and the output file records the api in which each element was added or removed.",
+                            new int[]{ OLD_API_OPT, NEW_API_OPT, BATCH_OPT, DAEMON_OPT, CLIENT_OPT, BASELINE_OPT } ),
+    new CLOptionDescriptor( "max-heap-budget",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            MAX_HEAP_BUDGET_OPT,
+                            "The approximate number of bytes that collected differences may retain before they are sorted and spilled to temporary files. Accepts a k, m or g suffix." ),
+    new CLOptionDescriptor( "check",
+                            CLOptionDescriptor.ARGUMENT_OPTIONAL,
+                            CHECK_OPT,
+                            "Stop the analysis at the first difference with at least the specified severity and exit with a non-zero exit code, without writing a report. The severity is one of equivalent, non_breaking, potentially_breaking or breaking and defaults to equivalent which matches any difference.",
+                            new int[]{ TIMELINE_OPT, BASELINE_OPT } ),
+    new CLOptionDescriptor( "min-severity",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            MIN_SEVERITY_OPT,
+                            "Only collect differences with at least the specified severity for some compatibility type. One of equivalent, non_breaking, potentially_breaking or breaking." ),
+    new CLOptionDescriptor( "include-code",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            INCLUDE_CODE_OPT,
+                            "Only collect differences with a code that matches the glob. May be specified multiple times." ),
+    new CLOptionDescriptor( "exclude-code",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            EXCLUDE_CODE_OPT,
+                            "Do not collect differences with a code that matches the glob. May be specified multiple times." ),
+    new CLOptionDescriptor( "include-package",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            INCLUDE_PACKAGE_OPT,
+                            "Only collect differences with a package attachment that matches the glob. May be specified multiple times." ),
+    new CLOptionDescriptor( "partition-by-package",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            PARTITION_BY_PACKAGE_OPT,
+                            "Split the classes of the apis into at most the specified number of partitions of similar size and analyze the partitions concurrently. Classes connected by inheritance are analyzed in the same partition. The report is unchanged." ),
+    new CLOptionDescriptor( "discover-extensions",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            DISCOVER_EXTENSIONS_OPT,
+                            "Use the Revapi extensions registered as services on the classpath in addition to the extensions of the tool. Scanning the classpath for the services increases the startup time." )
   };
+  /**
+   * The options that a client may forward to the daemon. These either describe the comparison or are
+   * consumed by the client. Other options configure the process that performs the comparison, so the daemon
+   * rejects them rather than silently ignoring them.
+   */
+  private static final Set<Integer> DAEMON_REQUEST_OPTIONS =
+    Collections.unmodifiableSet( new HashSet<>( Arrays.asList( QUIET_OPT,
+                                                               VERBOSE_OPT,
+                                                               CLIENT_OPT,
+                                                               PORT_OPT,
+                                                               TOKEN_FILE_OPT,
+                                                               CONFIG_OPT,
+                                                               OLD_API_OPT,
+                                                               OLD_API_SUPPORT_OPT,
+                                                               NEW_API_OPT,
+                                                               NEW_API_SUPPORT_OPT,
+                                                               OUTPUT_OPT,
+                                                               EXPECT_NO_DIFFERENCES_OPT,
+                                                               INCREMENTAL_OPT,
+                                                               BASELINE_OPT,
+                                                               CHECK_OPT,
+                                                               MIN_SEVERITY_OPT,
+                                                               INCLUDE_CODE_OPT,
+                                                               EXCLUDE_CODE_OPT,
+                                                               INCLUDE_PACKAGE_OPT,
+                                                               FORMAT_OPT ) ) );
 
   private static final int SUCCESS_EXIT_CODE = 0;
   private static final int DIFFERENCE_EXIT_CODE = 1;
   private static final int ERROR_PARSING_ARGS_EXIT_CODE = 2;
   private static final int ERROR_OTHER_EXIT_CODE = 3;
-  private static final Set<String> ATTACHMENT_EXCLUDES =
+  private static final long MAX_CACHE_SIZE = 256L * 1024L * 1024L;
+  static final Set<String> ATTACHMENT_EXCLUDES =
     Collections.unmodifiableSet( new HashSet<>( Arrays.asList( "exampleUseChainInNewApi",
                                                                "exampleUseChainInOldApi",
                                                                "newArchive",
                                                                "oldArchive" ) ) );
-  private static final String DEFAULT_CONFIG =
-    "[\n" +
-    "  {\n" +
-    "    \"extension\": \"revapi.java\",\n" +
-    "    \"configuration\": {\n" +
-    "      \"missing-classes\": {\n" +
-    "        \"behavior\": \"ignore\",\n" +
-    "        \"ignoreMissingAnnotations\": true\n" +
-    "      },\n" +
-    "      \"reportUsesFor\": \"all-differences\"\n" +
-    "    }\n" +
-    "  }\n" +
-    "]";
-
   private static final Logger c_logger = Logger.getGlobal();
   private static Revapi c_revapi;
-  private static AnalysisContext.Builder c_builder;
-  private static API.Builder c_oldAPI;
-  private static API.Builder c_newAPI;
+  /**
+   * Revapi instances are not thread-safe, so each thread performs analysis using a separate
+   * instance configured with the extensions registered when creating the initial instance.
+   */
+  private static final ThreadLocal<Revapi> c_threadRevapi = ThreadLocal.withInitial( Main::copyRevapi );
+  private static Comparison c_comparison;
   private static File c_configFile;
-  private static File c_outputFile;
+  private static File c_batchFile;
   private static boolean c_errorOnDifferences;
+  private static int c_threads = 1;
+  private static boolean c_threadsSpecified;
+  private static boolean c_useCache = true;
+  private static Path c_cacheDirectory = ResultCache.getDefaultDirectory();
+  private static ResultCache c_cache;
+  private static boolean c_daemon;
+  private static boolean c_client;
+  private static int c_port = DEFAULT_PORT;
+  private static int c_idleTimeout = DEFAULT_IDLE_TIMEOUT;
+  private static Path c_tokenFile;
+  private static boolean c_incremental;
+  private static File c_statsFile;
+  private static final PhaseStats c_stats = new PhaseStats();
+  private static boolean c_streaming;
+  private static int c_bufferSize = DEFAULT_BUFFER_SIZE;
+  private static ReportFormat c_format = ReportFormat.JSON;
+  private static boolean c_timeline;
+  private static long c_maxHeapBudget = Long.MAX_VALUE;
+  private static int c_partitionCount = 1;
+  private static boolean c_discoverExtensions;
+  private static DifferenceSeverity c_checkSeverity;
 
   public static void main( final String[] args )
   {
+    final PhaseStats.Sample start = c_stats.start();
     setupLogger();
-    setupRevapi();
     if ( !processOptions( args ) )
     {
       System.exit( ERROR_PARSING_ARGS_EXIT_CODE );
       return;
     }
+    c_stats.record( PhaseStats.OPTIONS, start );
 
-    final int differenceCount;
-    try
-    {
-      final AnalysisContext analysisContext = buildAnalysisContext();
-      final AnalysisResult analyze = c_revapi.analyze( analysisContext );
-      analyze.throwIfFailed();
-      final Map<Reporter, AnalysisContext> reporters = analyze.getExtensions().getReporters();
-      final CollectorReporter reporter = (CollectorReporter) reporters.keySet().iterator().next();
-
-      differenceCount = emitReport( reporter );
-    }
-    catch ( final Throwable t )
+    if ( c_client )
     {
-      c_logger.log( Level.SEVERE, "Error performing analysis: " + t );
-      t.printStackTrace();
-      System.exit( ERROR_OTHER_EXIT_CODE );
+      // The client does not setup revapi as the comparison is performed by the daemon
+      System.exit( runClient( args ) );
       return;
     }
 
-    if ( 0 != differenceCount )
+    final PhaseStats.Sample setupStart = c_stats.start();
+    setupRevapi();
+    c_stats.record( PhaseStats.SETUP, setupStart );
+    final int exitCode;
+    if ( c_daemon )
     {
-      if ( c_logger.isLoggable( Level.INFO ) )
-      {
-        c_logger.log( Level.SEVERE, differenceCount + " differences found between APIs" );
-      }
-      if ( c_errorOnDifferences )
+      exitCode = runDaemon();
+    }
+    else if ( null != c_batchFile )
+    {
+      final List<Comparison> comparisons = BatchManifest.load( c_batchFile, c_configFile );
+      if ( null == comparisons )
       {
-        System.exit( DIFFERENCE_EXIT_CODE );
+        System.exit( ERROR_PARSING_ARGS_EXIT_CODE );
+        return;
       }
-      else
+      for ( final Comparison comparison : comparisons )
       {
-        System.exit( SUCCESS_EXIT_CODE );
+        comparison.setErrorOnDifferences( c_errorOnDifferences );
+        comparison.setIncremental( c_incremental );
+        comparison.setFormat( c_format );
+        comparison.setCheckSeverity( c_checkSeverity );
+        comparison.setFilter( c_comparison.getFilter() );
       }
+      exitCode = runBatch( comparisons, c_threads );
+    }
+    else if ( c_timeline )
+    {
+      exitCode = runTimeline();
     }
     else
     {
-      if ( c_logger.isLoggable( Level.INFO ) )
+      exitCode = runComparison( c_comparison );
+    }
+    System.exit( emitStats() ? exitCode : Math.max( exitCode, ERROR_OTHER_EXIT_CODE ) );
+  }
+
+  /**
+   * Log the stats and write them to the stats file if specified.
+   *
+   * @return false if the stats file could not be written.
+   */
+  private static boolean emitStats()
+  {
+    c_stats.log();
+    if ( null != c_statsFile )
+    {
+      try
       {
-        c_logger.log( Level.INFO, "No difference found between APIs" );
+        c_stats.write( c_statsFile );
+      }
+      catch ( final IOException e )
+      {
+        c_logger.log( Level.SEVERE, "Error: Unable to write stats file " + c_statsFile + ": " + e );
+        return false;
       }
-      System.exit( SUCCESS_EXIT_CODE );
     }
+    return true;
   }
 
-  private static int emitReport( @Nonnull final CollectorReporter reporter )
-    throws IOException
+  /**
+   * Compare each pair of consecutive apis in the timeline and write the summary.
+   * The archives are shared between the steps so each archive is only mapped and digested once.
+   */
+  private static int runTimeline()
   {
-    int differenceCount = 0;
-    final List<Report> reports = reporter.getReports();
-    try ( final FileOutputStream output = new FileOutputStream( c_outputFile ) )
+    final Timeline timeline = Timeline.create( c_comparison );
+    if ( null == timeline )
     {
-      final HashMap<String, Object> config = new HashMap<>();
-      config.put( JsonGenerator.PRETTY_PRINTING, true );
-      final JsonGenerator g = Json.createGeneratorFactory( config ).createGenerator( output );
-      differenceCount += emitReports( g, reports );
-      g.flush();
-      g.close();
+      return ERROR_PARSING_ARGS_EXIT_CODE;
     }
-    formatJson( c_outputFile );
-    return differenceCount;
+    final int threads = c_threadsSpecified ? c_threads : Runtime.getRuntime().availableProcessors();
+    final int exitCode = runBatch( timeline.getComparisons(), threads );
+    try
+    {
+      timeline.writeSummary();
+    }
+    catch ( final IOException e )
+    {
+      c_logger.log( Level.SEVERE, "Error: Unable to write timeline summary " + c_comparison.getOutputFile() + ": " + e );
+      return Math.max( exitCode, ERROR_OTHER_EXIT_CODE );
+    }
+    return exitCode;
   }
 
   /**
-   * Format the json file.
-   * This is horribly inefficient but it is not called very often so ... meh.
+   * Run each comparison in turn and emit a summary of the results.
+   * The exit code is the most severe exit code of any comparison.
    */
-  private static void formatJson( @Nonnull final File file )
-    throws IOException
+  private static int runBatch( @Nonnull final List<Comparison> comparisons, final int threads )
   {
-    final byte[] data = Files.readAllBytes( file.toPath() );
-    final Charset charset = Charset.forName( "UTF-8" );
-    final String jsonData = new String( data, charset );
+    final int[] exitCodes =
+      threads > 1 ? runConcurrently( comparisons, threads ) : runSequentially( comparisons );
+    int exitCode = SUCCESS_EXIT_CODE;
+    for ( int i = 0; i < exitCodes.length; i++ )
+    {
+      if ( c_logger.isLoggable( Level.INFO ) || SUCCESS_EXIT_CODE != exitCodes[ i ] )
+      {
+        c_logger.log( Level.WARNING, comparisons.get( i ).getOutputFile() + ": exit code " + exitCodes[ i ] );
+      }
+      exitCode = Math.max( exitCode, exitCodes[ i ] );
+    }
+    return exitCode;
+  }
 
-    final String output =
-      jsonData
-        .replaceAll( "(?m)^ {4}\\{", "  {" )
-        .replaceAll( "(?m)^ {4}}", "  }" )
-        .replaceAll( "(?m)^ {8}\"", "    \"" )
-        .replaceAll( "(?m)^ {8}}", "    }" )
-        .replaceAll( "(?m)^ {12}\"", "      \"" )
-        .replaceAll( "(?m)^\n\\[\n", "[\n" ) +
-      "\n";
-    Files.write( file.toPath(), output.getBytes( charset ) );
+  @Nonnull
+  private static int[] runSequentially( @Nonnull final List<Comparison> comparisons )
+  {
+    final int[] exitCodes = new int[ comparisons.size() ];
+    for ( int i = 0; i < exitCodes.length; i++ )
+    {
+      exitCodes[ i ] = runComparison( comparisons.get( i ) );
+    }
+    return exitCodes;
   }
 
-  private static int emitReports( @Nonnull final JsonGenerator g, @Nonnull final List<Report> reports )
+  @Nonnull
+  private static int[] runConcurrently( @Nonnull final List<Comparison> comparisons, final int threads )
   {
-    int differenceCount = 0;
-    g.writeStartArray();
-    for ( final Report report : reports )
+    final ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, comparisons.size() ) );
+    try
     {
-      final List<Difference> differences = sort( report );
-      for ( final Difference difference : differences )
+      final List<Future<Integer>> results = new ArrayList<>( comparisons.size() );
+      for ( final Comparison comparison : comparisons )
       {
-        emitDifference( g, report, difference );
-        differenceCount++;
+        results.add( executor.submit( () -> runComparison( comparison ) ) );
       }
+      final int[] exitCodes = new int[ comparisons.size() ];
+      for ( int i = 0; i < exitCodes.length; i++ )
+      {
+        try
+        {
+          exitCodes[ i ] = results.get( i ).get();
+        }
+        catch ( final InterruptedException | ExecutionException e )
+        {
+          c_logger.log( Level.SEVERE, "Error performing analysis: " + e );
+          exitCodes[ i ] = ERROR_OTHER_EXIT_CODE;
+        }
+      }
+      return exitCodes;
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  private static int runDaemon()
+  {
+    try
+    {
+      new Daemon( c_port,
+                  c_idleTimeout * 1000L,
+                  DAEMON_REQUEST_TIMEOUT,
+                  c_threads,
+                  getTokenFile(),
+                  Main::handleRequest ).run();
+      return SUCCESS_EXIT_CODE;
+    }
+    catch ( final IOException | InterruptedException e )
+    {
+      c_logger.log( Level.SEVERE, "Error running daemon: " + e );
+      return ERROR_OTHER_EXIT_CODE;
     }
-    g.writeEnd();
-    return differenceCount;
   }
 
   /**
-   * Sort differences. Order does not matter - just that it is stable so difference reports remain stable
-   * and will not churn version control.
+   * Return the file containing the token that authenticates clients of the daemon.
    */
   @Nonnull
-  private static List<Difference> sort( @Nonnull final Report report )
+  private static Path getTokenFile()
   {
-    return report.getDifferences().stream().sorted( Main::compareDiff ).collect( Collectors.toList() );
+    return null != c_tokenFile ? c_tokenFile : ResultCache.getDefaultDirectory().resolve( "daemon-" + c_port + ".token" );
   }
 
-  private static int compareDiff( @Nonnull final Difference d1, @Nonnull final Difference d2 )
+  /**
+   * Perform the comparison described by a request from a client.
+   * The request contains the command line arguments and the directory against which relative paths are resolved.
+   * Requests containing options that do not describe the comparison are rejected.
+   */
+  @Nonnull
+  static JsonObject handleRequest( @Nonnull final JsonObject request )
+  {
+    final List<CLOption> options = parseRequestOptions( request );
+    final String unsupported = null != options ? findUnsupportedOption( options ) : null;
+    if ( null != unsupported )
+    {
+      c_logger.log( Level.SEVERE, "Error: " + unsupported );
+      return Json.createObjectBuilder( Daemon.createErrorResponse( unsupported ) )
+        .add( "exitCode", ERROR_PARSING_ARGS_EXIT_CODE )
+        .build();
+    }
+    final Comparison comparison = null != options ? createRequestComparison( request, options ) : null;
+    final int differenceCount = null != comparison ? analyzeComparison( comparison ) : -1;
+    final int exitCode =
+      null != comparison ? toExitCode( comparison, differenceCount ) : ERROR_PARSING_ARGS_EXIT_CODE;
+    return Json.createObjectBuilder()
+      .add( "exitCode", exitCode )
+      .add( "differenceCount", differenceCount )
+      .build();
+  }
+
+  @Nullable
+  private static List<CLOption> parseRequestOptions( @Nonnull final JsonObject request )
   {
-    return toDescriptor( d1 ).compareTo( toDescriptor( d2 ) );
+    final String[] args;
+    try
+    {
+      args = request.getJsonArray( "args" )
+        .getValuesAs( JsonString.class )
+        .stream()
+        .map( JsonString::getString )
+        .toArray( String[]::new );
+    }
+    catch ( final RuntimeException e )
+    {
+      c_logger.log( Level.SEVERE, "Error: Malformed request: " + request );
+      return null;
+    }
+    final CLArgsParser parser = new CLArgsParser( args, OPTIONS );
+    if ( null != parser.getErrorString() )
+    {
+      c_logger.log( Level.SEVERE, "Error: " + parser.getErrorString() );
+      return null;
+    }
+    return parser.getArguments();
   }
 
   /**
-   * Produce a uniqueish stable string that should be stable between success runs.
+   * Return a message describing the first option that the daemon does not support or null if every option is supported.
    */
-  @Nonnull
-  private static String toDescriptor( @Nonnull final Difference d )
+  @Nullable
+  private static String findUnsupportedOption( @Nonnull final List<CLOption> options )
   {
-    return d.code + "-" +
-           sortKeys( d.classification )
-             .stream()
-             .map( k -> k + "=" + d.classification.get( k ) )
-             .collect( Collectors.joining( "," ) ) +
-           "-" +
-           sortKeys( d.attachments )
-             .stream()
-             .map( k -> k + "=" + d.attachments.get( k ) )
-             .collect( Collectors.joining( "," ) );
+    for ( final CLOption option : options )
+    {
+      if ( CLOption.TEXT_ARGUMENT == option.getId() )
+      {
+        return "Unexpected argument: " + option.getArgument();
+      }
+      else if ( !DAEMON_REQUEST_OPTIONS.contains( option.getId() ) )
+      {
+        return "The option --" + option.getDescriptor().getName() + " is not supported by the daemon as it " +
+               "configures the process performing the comparison. Specify it when starting the daemon instead.";
+      }
+    }
+    return null;
   }
 
-  @Nonnull
-  private static <K, V> List<K> sortKeys( @Nonnull final Map<K, V> map )
+  @Nullable
+  private static Comparison createRequestComparison( @Nonnull final JsonObject request,
+                                                     @Nonnull final List<CLOption> options )
   {
-    return map.keySet()
-      .stream()
-      .sorted()
-      .collect( Collectors.toList() );
+    final Comparison comparison;
+    try
+    {
+      comparison = new Comparison( new File( request.getString( "directory" ) ) );
+    }
+    catch ( final RuntimeException e )
+    {
+      c_logger.log( Level.SEVERE, "Error: Malformed request: " + request );
+      return null;
+    }
+    for ( final CLOption option : options )
+    {
+      if ( !processComparisonOption( comparison, option ) )
+      {
+        return null;
+      }
+    }
+    return comparison.validate() ? comparison : null;
   }
 
-  private static void emitDifference( @Nonnull final JsonGenerator g,
-                                      @Nonnull final Report report,
-                                      @Nonnull final Difference difference )
+  private static int runClient( @Nonnull final String[] args )
   {
-    g.writeStartObject();
-    g.write( "code", difference.code );
-    g.write( "description", difference.description );
-    final Element newElement = report.getNewElement();
-    final Element oldElement = report.getOldElement();
-    if ( null != oldElement &&
-         null != newElement &&
-         newElement.getFullHumanReadableString().equals( oldElement.getFullHumanReadableString() ) )
+    final JsonArrayBuilder arguments = Json.createArrayBuilder();
+    for ( final String arg : args )
     {
-      g.write( "element", newElement.getFullHumanReadableString() );
+      arguments.add( arg );
+    }
+    final JsonObject request =
+      Json.createObjectBuilder()
+        .add( "directory", new File( "." ).getAbsoluteFile().getParent() )
+        .add( "args", arguments )
+        .build();
+    final JsonObject response;
+    try
+    {
+      response = Daemon.send( c_port, getTokenFile(), request );
+    }
+    catch ( final IOException e )
+    {
+      c_logger.log( Level.SEVERE, "Error: Unable to communicate with daemon on port " + c_port + ": " + e );
+      return ERROR_OTHER_EXIT_CODE;
+    }
+    final String error = Daemon.getError( response );
+    if ( null != error )
+    {
+      c_logger.log( Level.SEVERE, "Error: " + error );
+    }
+    final int differenceCount = response.getInt( "differenceCount", -1 );
+    if ( -1 != differenceCount )
+    {
+      logDifferenceCount( differenceCount );
+    }
+    return response.getInt( "exitCode", ERROR_OTHER_EXIT_CODE );
+  }
+
+  private static int runComparison( @Nonnull final Comparison comparison )
+  {
+    return toExitCode( comparison, analyzeComparison( comparison ) );
+  }
+
+  private static int toExitCode( @Nonnull final Comparison comparison, final int differenceCount )
+  {
+    if ( -1 == differenceCount )
+    {
+      return ERROR_OTHER_EXIT_CODE;
+    }
+    else if ( 0 != differenceCount &&
+              ( comparison.isErrorOnDifferences() ||
+                null != comparison.getBaselineFile() ||
+                null != comparison.getCheckSeverity() ) )
+    {
+      return DIFFERENCE_EXIT_CODE;
     }
     else
     {
-      if ( null != newElement )
+      return SUCCESS_EXIT_CODE;
+    }
+  }
+
+  /**
+   * Perform the comparison and return the number of differences or -1 if an error occurred.
+   */
+  private static int analyzeComparison( @Nonnull final Comparison comparison )
+  {
+    final int differenceCount;
+    try
+    {
+      differenceCount = analyze( comparison );
+    }
+    catch ( final Throwable t )
+    {
+      c_logger.log( Level.SEVERE, "Error performing analysis: " + t );
+      t.printStackTrace();
+      return -1;
+    }
+    if ( null != comparison.getCheckSeverity() )
+    {
+      if ( c_logger.isLoggable( Level.INFO ) )
       {
-        g.write( "newElement", newElement.getFullHumanReadableString() );
+        c_logger.log( 0 != differenceCount ? Level.SEVERE : Level.INFO,
+                      0 != differenceCount ? "Difference found between APIs" : "No difference found between APIs" );
       }
-      if ( null != oldElement )
+    }
+    else
+    {
+      logDifferenceCount( differenceCount );
+    }
+    return differenceCount;
+  }
+
+  private static void logDifferenceCount( final int differenceCount )
+  {
+    if ( 0 != differenceCount )
+    {
+      if ( c_logger.isLoggable( Level.INFO ) )
       {
-        g.write( "oldElement", oldElement.getFullHumanReadableString() );
+        c_logger.log( Level.SEVERE, differenceCount + " differences found between APIs" );
       }
     }
-    g.writeStartObject( "classification" );
-    for ( final CompatibilityType key : sortKeys( difference.classification ) )
+    else
     {
-      g.write( key.name(), difference.classification.get( key ).name() );
+      if ( c_logger.isLoggable( Level.INFO ) )
+      {
+        c_logger.log( Level.INFO, "No difference found between APIs" );
+      }
     }
-    g.writeEnd();
+  }
 
-    g.writeStartObject( "attachments" );
-    for ( final String key : sortKeys( difference.attachments ) )
+  private static int analyze( @Nonnull final Comparison comparison )
+    throws Exception
+  {
+    if ( null != comparison.getCheckSeverity() )
+    {
+      return performCheck( comparison );
+    }
+    final File outputFile = comparison.getOutputFile();
+    final long shareStart = System.nanoTime();
+    final long sharedBytes = comparison.shareSupportArchives();
+    if ( 0 != sharedBytes && c_logger.isLoggable( Level.FINE ) )
     {
-      if ( !ATTACHMENT_EXCLUDES.contains( key ) )
+      c_logger.log( Level.INFO,
+                    "Shared " + sharedBytes + " bytes of support archives between the old and new apis in " +
+                    ( System.nanoTime() - shareStart ) / 1000000 + "ms" );
+    }
+    // The cache only retains the report so comparisons that observe the differences as they are emitted are not cached
+    final String cacheKey =
+      null != c_cache && null == comparison.getListener() ? c_cache.computeKey( comparison ) : null;
+    if ( null != cacheKey )
+    {
+      final int differenceCount = c_cache.restore( cacheKey, outputFile );
+      if ( -1 != differenceCount )
       {
-        g.write( key, difference.attachments.get( key ) );
+        if ( c_logger.isLoggable( Level.FINE ) )
+        {
+          c_logger.log( Level.INFO, "Restored report " + outputFile + " from cache" );
+        }
+        return differenceCount;
       }
     }
-    g.writeEnd();
 
-    g.writeEnd();
+    final int differenceCount = performAnalysis( comparison );
+    if ( null != cacheKey )
+    {
+      c_cache.store( cacheKey, outputFile, differenceCount );
+    }
+    return differenceCount;
   }
 
-  @Nonnull
-  private static AnalysisContext buildAnalysisContext()
-    throws IOException
+  private static int performAnalysis( @Nonnull final Comparison comparison )
+    throws Exception
   {
-    c_builder.withOldAPI( c_oldAPI.build() );
-    c_builder.withNewAPI( c_newAPI.build() );
+    // Without streaming or a heap budget the buffer is never spilled
+    try ( final SpillingCollector collector =
+            new SpillingCollector( c_streaming ? c_bufferSize : Integer.MAX_VALUE, c_maxHeapBudget ) )
+    {
+      runAnalysis( comparison, Collections.singletonMap( CollectorReporter.COLLECTOR_KEY, collector ) );
+      // The analysis has been closed before emitting the report so that the elements can be reclaimed
+      return emitReport( collector, comparison );
+    }
+  }
 
-    if ( null != c_configFile )
+  /**
+   * Perform the analysis until the first difference with at least the check severity is reported.
+   * No differences are collected and no report is written.
+   *
+   * @return 1 if a difference was found, otherwise 0.
+   */
+  private static int performCheck( @Nonnull final Comparison comparison )
+    throws Exception
+  {
+    try
+    {
+      runAnalysis( comparison,
+                   Collections.singletonMap( CollectorReporter.CHECK_SEVERITY_KEY, comparison.getCheckSeverity() ) );
+      return 0;
+    }
+    catch ( final Exception e )
     {
-      c_builder.withConfigurationFromJSONStream( new FileInputStream( c_configFile ) );
+      if ( DifferenceFoundException.isCause( e ) )
+      {
+        return 1;
+      }
+      throw e;
+    }
+  }
 
+  /**
+   * Build the analysis context from the comparison and perform the analysis.
+   * The analysis is skipped if the apis can not differ. If the comparison is incremental then the analysis is
+   * restricted to the affected classes and is skipped entirely if no class is affected. Otherwise if partitioning is enabled then the
+   * packages are analyzed concurrently in partitions.
+   *
+   * @param data the data made available to the extensions performing the analysis.
+   */
+  private static void runAnalysis( @Nonnull final Comparison comparison, @Nonnull final Map<String, Object> data )
+    throws Exception
+  {
+    final PhaseStats.Sample contextStart = c_stats.start();
+    final DifferenceFilter filter = comparison.getFilter();
+    final Map<String, Object> contextData = new HashMap<>( data );
+    if ( !filter.isEmpty() )
+    {
+      contextData.put( CollectorReporter.FILTER_KEY, filter );
     }
-    else
+    AnalysisContext analysisContext = comparison.buildAnalysisContext( contextData );
+    boolean skipAnalysis = false;
+    boolean restricted = false;
+    final long checkStart = System.nanoTime();
+    final String identical = IdenticalApiCheck.check( comparison, analysisContext.getConfiguration() );
+    if ( null != identical )
+    {
+      skipAnalysis = true;
+      if ( c_logger.isLoggable( Level.FINE ) )
+      {
+        c_logger.log( Level.INFO,
+                      "Skipped analysis as " + identical + " after checking for " +
+                      ( System.nanoTime() - checkStart ) / 1000000 + "ms" );
+      }
+    }
+    else if ( comparison.isIncremental() )
+    {
+      final long start = System.nanoTime();
+      final Set<String> classes = IncrementalFilter.computeAffectedClasses( comparison, analysisContext.getConfiguration() );
+      if ( c_logger.isLoggable( Level.FINE ) )
+      {
+        c_logger.log( Level.INFO,
+                      "Incremental pre-analysis completed in " + ( System.nanoTime() - start ) / 1000000 + "ms" );
+      }
+      if ( null != classes && classes.isEmpty() )
+      {
+        skipAnalysis = true;
+      }
+      else if ( null != classes )
+      {
+        final AnalysisContext restrictedContext = IncrementalFilter.restrict( analysisContext, classes );
+        if ( null != restrictedContext )
+        {
+          analysisContext = restrictedContext;
+          restricted = true;
+        }
+      }
+    }
+    final List<AnalysisContext> partitions =
+      c_partitionCount > 1 && !skipAnalysis && !restricted ?
+      PackagePartitioner.partition( comparison, analysisContext, c_partitionCount ) :
+      null;
+    c_stats.record( PhaseStats.CONTEXT, contextStart );
+    if ( !skipAnalysis )
+    {
+      final PhaseStats.Sample analyzeStart = c_stats.start();
+      try
+      {
+        if ( null != partitions )
+        {
+          analyzeConcurrently( partitions );
+        }
+        else
+        {
+          analyzeContext( analysisContext );
+        }
+      }
+      finally
+      {
+        c_stats.record( PhaseStats.ANALYZE, analyzeStart );
+      }
+    }
+  }
+
+  private static void analyzeContext( @Nonnull final AnalysisContext analysisContext )
+    throws Exception
+  {
+    // The result is closed explicitly rather than in a try-with-resources block as close() may
+    // throw InterruptedException
+    final AnalysisResult analyze = c_threadRevapi.get().analyze( analysisContext );
+    try
+    {
+      analyze.throwIfFailed();
+    }
+    finally
+    {
+      analyze.close();
+    }
+  }
+
+  /**
+   * Analyze each context on a separate thread. The reporters of every context share the collector so the
+   * differences are merged and sorted into the same order as an unpartitioned analysis.
+   * The analyses are awaited in the order that they complete so the first failure, including the
+   * DifferenceFoundException that stops a check, is rethrown immediately and the remaining analyses are cancelled.
+   */
+  private static void analyzeConcurrently( @Nonnull final List<AnalysisContext> contexts )
+    throws Exception
+  {
+    final ExecutorService executor = Executors.newFixedThreadPool( contexts.size() );
+    try
+    {
+      final CompletionService<Void> completionService = new ExecutorCompletionService<>( executor );
+      for ( final AnalysisContext context : contexts )
+      {
+        completionService.submit( () -> {
+          // The cpu time and allocations of the partition are measured on its thread and added to the phase
+          final PhaseStats.Sample start = c_stats.start();
+          try
+          {
+            analyzeContext( context );
+          }
+          finally
+          {
+            c_stats.recordWorker( PhaseStats.ANALYZE, start );
+          }
+          return null;
+        } );
+      }
+      for ( int i = 0; i < contexts.size(); i++ )
+      {
+        try
+        {
+          completionService.take().get();
+        }
+        catch ( final ExecutionException e )
+        {
+          final Throwable cause = e.getCause();
+          throw cause instanceof Exception ? (Exception) cause : e;
+        }
+      }
+    }
+    finally
+    {
+      // Interrupt the analyses that are still running after a failure
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Emit the records from the collector, merging any runs spilled to disk.
+   * If the comparison has a baseline then only the records not present in the baseline are emitted.
+   * If the format supports it, the records are encoded in shards in parallel and written in order.
+   *
+   * @return the number of differences emitted.
+   */
+  private static int emitReport( @Nonnull final SpillingCollector collector, @Nonnull final Comparison comparison )
+    throws IOException
+  {
+    final PhaseStats.Sample sortStart = c_stats.start();
+    collector.finish();
+    c_stats.record( PhaseStats.SORT, sortStart );
+
+    final PhaseStats.Sample start = c_stats.start();
+    final File baselineFile = comparison.getBaselineFile();
+    final BaselineIndex baseline = null != baselineFile ? BaselineIndex.load( baselineFile ) : null;
+    final SpillingCollector.RecordConsumer listener = comparison.getListener();
+    final int[] differenceCount = new int[ 1 ];
+    final int[] unchangedCount = new int[ 1 ];
+    try ( final ReportWriter writer =
+            ReportWriter.create( comparison.getFormat(), comparison.getOutputFile().toPath() ) )
     {
-      c_builder.withConfigurationFromJSON( DEFAULT_CONFIG );
+      writer.writeStart();
+      final ReportWriter.ShardEncoder encoder = writer.getShardEncoder();
+      final ShardedReportEmitter emitter = null != encoder ? new ShardedReportEmitter( encoder, c_stats ) : null;
+      collector.forEach( record -> {
+        if ( null != baseline && baseline.remove( record ) )
+        {
+          unchangedCount[ 0 ]++;
+        }
+        else
+        {
+          if ( null != emitter )
+          {
+            emitter.add( record );
+          }
+          else
+          {
+            writer.writeDifference( record.getCode(),
+                                    record.getDescription(),
+                                    record.getNewElement(),
+                                    record.getOldElement(),
+                                    record.getClassification(),
+                                    record.getAttachments() );
+          }
+          if ( null != listener )
+          {
+            listener.accept( record );
+          }
+          differenceCount[ 0 ]++;
+        }
+      } );
+      if ( null != emitter )
+      {
+        emitter.finish();
+      }
+      writer.writeEnd();
     }
+    c_stats.record( PhaseStats.EMIT, start );
+    c_stats.recordComparison( collector.getReportCount(), differenceCount[ 0 ] + unchangedCount[ 0 ] );
+    if ( null != baseline && c_logger.isLoggable( Level.INFO ) )
+    {
+      c_logger.log( Level.INFO,
+                    "Compared to baseline " + baselineFile + ": " + differenceCount[ 0 ] + " new, " +
+                    baseline.getRemainingCount() + " resolved and " + unchangedCount[ 0 ] + " unchanged differences" );
+    }
+    return differenceCount[ 0 ];
+  }
 
-    return c_builder.build();
+  /**
+   * Produce a uniqueish stable string that should be stable between success runs.
+   */
+  @Nonnull
+  static String toDescriptor( @Nonnull final Difference d )
+  {
+    final StringBuilder sb = new StringBuilder();
+    sb.append( d.code ).append( '-' );
+    appendEntries( sb, d.classification );
+    sb.append( '-' );
+    appendEntries( sb, d.attachments );
+    return sb.toString();
+  }
+
+  private static <K extends Comparable<K>, V> void appendEntries( @Nonnull final StringBuilder sb,
+                                                                 @Nonnull final Map<K, V> map )
+  {
+    boolean first = true;
+    for ( final K key : sortKeys( map ) )
+    {
+      if ( !first )
+      {
+        sb.append( ',' );
+      }
+      first = false;
+      sb.append( key ).append( '=' ).append( map.get( key ) );
+    }
   }
 
-  private static void setupRevapi()
+  @Nonnull
+  static <K extends Comparable<K>, V> List<K> sortKeys( @Nonnull final Map<K, V> map )
   {
-    c_revapi = Revapi.builder()
+    final List<K> keys = new ArrayList<>( map.keySet() );
+    Collections.sort( keys );
+    return keys;
+  }
+
+  static void setupRevapi()
+  {
+    final Revapi.Builder builder = Revapi.builder();
+    if ( c_discoverExtensions )
+    {
+      // Only scan the classpath when requested as loading the service descriptors of every jar slows startup
+      builder.withAllExtensionsFromThreadContextClassLoader();
+    }
+    c_revapi = builder
+      .withAnalyzers( Extensions.ANALYZERS )
       .withReporters( CollectorReporter.class )
-      .withAllExtensionsFromThreadContextClassLoader()
+      .withTransforms( Extensions.TRANSFORMS )
+      .withFilters( Extensions.FILTERS )
       .build();
+  }
+
+  @Nonnull
+  private static Revapi copyRevapi()
+  {
+    return new Revapi( c_revapi.getApiAnalyzerTypes(),
+                       c_revapi.getReporterTypes(),
+                       c_revapi.getDifferenceTransformTypes(),
+                       c_revapi.getElementFilterTypes() );
+  }
 
-    c_builder = AnalysisContext.builder();
-    c_oldAPI = API.builder();
-    c_newAPI = API.builder();
+  private static void setupCache()
+  {
+    final String toolVersion = ResultCache.getToolVersion();
+    if ( c_useCache && null != toolVersion )
+    {
+      c_cache = new ResultCache( c_cacheDirectory, MAX_CACHE_SIZE, toolVersion );
+    }
+    else if ( c_useCache && c_logger.isLoggable( Level.FINE ) )
+    {
+      c_logger.log( Level.INFO, "Result cache disabled as the version of the tool is unknown" );
+    }
   }
 
   private static void setupLogger()
@@ -380,97 +1098,178 @@ public class Main
       c_logger.log( Level.SEVERE, "Error: " + parser.getErrorString() );
       return false;
     }
-    boolean newApiAdded = false;
-    boolean oldApiAdded = false;
+    c_comparison = new Comparison();
     // Get a list of parsed options
     final List<CLOption> options = parser.getArguments();
+    final List<String> timelineApis = new ArrayList<>();
     for ( final CLOption option : options )
     {
+      if ( !processComparisonOption( c_comparison, option ) )
+      {
+        return false;
+      }
       switch ( option.getId() )
       {
         case CLOption.TEXT_ARGUMENT:
         {
-          c_logger.log( Level.SEVERE, "Error: Unexpected argument: " + option.getArgument() );
-          return false;
+          timelineApis.add( option.getArgument() );
+          break;
+        }
+        case TIMELINE_OPT:
+        {
+          c_timeline = true;
+          break;
         }
         case CONFIG_OPT:
+        {
+          // The existence of the file has already been verified when processing the comparison option
+          c_configFile = new File( option.getArgument() );
+          break;
+        }
+        case BATCH_OPT:
         {
           final String argument = option.getArgument();
           final File file = new File( argument );
           if ( !file.exists() )
           {
-            c_logger.log( Level.SEVERE, "Error: Specified config file does not exist: " + argument );
+            c_logger.log( Level.SEVERE, "Error: Specified batch manifest does not exist: " + argument );
             return false;
           }
-          c_configFile = file;
+          c_batchFile = file;
           break;
         }
-        case OLD_API_OPT:
+        case THREADS_OPT:
         {
-          oldApiAdded = true;
-          final String argument = option.getArgument();
-          final LabeledFileArchive archive = parseArchive( argument );
-          if ( !archive.getFile().exists() )
+          c_threads = parsePositiveInteger( option.getArgument() );
+          if ( c_threads < 1 )
           {
-            c_logger.log( Level.SEVERE, "Error: Specified old api does not exist: " + argument );
+            c_logger.log( Level.SEVERE,
+                          "Error: Specified thread count is not a positive integer: " + option.getArgument() );
             return false;
           }
-          c_oldAPI.addArchive( archive );
+          c_threadsSpecified = true;
           break;
         }
-        case OLD_API_SUPPORT_OPT:
+        case NO_CACHE_OPT:
         {
-          final String argument = option.getArgument();
-          final File file = new File( argument );
-          if ( !file.exists() )
+          c_useCache = false;
+          break;
+        }
+        case CACHE_DIR_OPT:
+        {
+          c_cacheDirectory = new File( option.getArgument() ).toPath();
+          break;
+        }
+        case EXPECT_NO_DIFFERENCES_OPT:
+        {
+          c_errorOnDifferences = true;
+          break;
+        }
+        case DAEMON_OPT:
+        {
+          c_daemon = true;
+          break;
+        }
+        case CLIENT_OPT:
+        {
+          c_client = true;
+          break;
+        }
+        case PORT_OPT:
+        {
+          c_port = parsePositiveInteger( option.getArgument() );
+          if ( c_port < 1 || c_port > 65535 )
           {
-            c_logger.log( Level.SEVERE, "Error: Specified old api support archive does not exist: " + argument );
+            c_logger.log( Level.SEVERE, "Error: Specified port is not valid: " + option.getArgument() );
             return false;
           }
-          c_oldAPI.addSupportArchive( new FileArchive( file ) );
           break;
         }
-        case NEW_API_OPT:
+        case TOKEN_FILE_OPT:
         {
-          newApiAdded = true;
-          final String argument = option.getArgument();
-          final LabeledFileArchive archive = parseArchive( argument );
-          if ( !archive.getFile().exists() )
+          c_tokenFile = new File( option.getArgument() ).toPath();
+          break;
+        }
+        case IDLE_TIMEOUT_OPT:
+        {
+          c_idleTimeout = parsePositiveInteger( option.getArgument() );
+          if ( c_idleTimeout < 1 )
           {
-            c_logger.log( Level.SEVERE, "Error: Specified new api does not exist: " + argument );
+            c_logger.log( Level.SEVERE,
+                          "Error: Specified idle timeout is not a positive integer: " + option.getArgument() );
             return false;
           }
-          c_newAPI.addArchive( archive );
           break;
         }
-        case NEW_API_SUPPORT_OPT:
+        case INCREMENTAL_OPT:
         {
-          final String argument = option.getArgument();
-          final File file = new File( argument );
-          if ( !file.exists() )
+          c_incremental = true;
+          break;
+        }
+        case FORMAT_OPT:
+        {
+          // The format has already been validated when processing the comparison option
+          c_format = ReportFormat.parse( option.getArgument() );
+          break;
+        }
+        case CHECK_OPT:
+        {
+          // The severity has already been validated when processing the comparison option
+          c_checkSeverity = parseSeverity( option.getArgument() );
+          break;
+        }
+        case STREAMING_OPT:
+        {
+          c_streaming = true;
+          break;
+        }
+        case BUFFER_SIZE_OPT:
+        {
+          c_bufferSize = parsePositiveInteger( option.getArgument() );
+          if ( c_bufferSize < 1 )
           {
-            c_logger.log( Level.SEVERE, "Error: Specified new api support archive does not exist: " + argument );
+            c_logger.log( Level.SEVERE,
+                          "Error: Specified buffer size is not a positive integer: " + option.getArgument() );
             return false;
           }
-          c_newAPI.addSupportArchive( new FileArchive( file ) );
           break;
         }
-        case OUTPUT_OPT:
+        case MAX_HEAP_BUDGET_OPT:
         {
-          final String argument = option.getArgument();
-          final File file = new File( argument );
-          if ( !file.getAbsoluteFile().getParentFile().exists() )
+          c_maxHeapBudget = parseByteSize( option.getArgument() );
+          if ( c_maxHeapBudget < 1 )
+          {
+            c_logger.log( Level.SEVERE, "Error: Specified heap budget is not a valid size: " + option.getArgument() );
+            return false;
+          }
+          break;
+        }
+        case PARTITION_BY_PACKAGE_OPT:
+        {
+          c_partitionCount = parsePositiveInteger( option.getArgument() );
+          if ( c_partitionCount < 1 )
           {
             c_logger.log( Level.SEVERE,
-                          "Error: Directory containing output file does not exist: " + file.getParentFile() );
+                          "Error: Specified partition count is not a positive integer: " + option.getArgument() );
             return false;
           }
-          c_outputFile = file;
           break;
         }
-        case EXPECT_NO_DIFFERENCES_OPT:
+        case DISCOVER_EXTENSIONS_OPT:
         {
-          c_errorOnDifferences = true;
+          c_discoverExtensions = true;
+          break;
+        }
+        case STATS_FILE_OPT:
+        {
+          final File file = new File( option.getArgument() );
+          if ( !file.getAbsoluteFile().getParentFile().exists() )
+          {
+            c_logger.log( Level.SEVERE,
+                          "Error: Directory containing stats file does not exist: " + file.getParentFile() );
+            return false;
+          }
+          c_statsFile = file;
           break;
         }
         case VERBOSE_OPT:
@@ -490,41 +1289,177 @@ public class Main
         }
       }
     }
-    if ( !newApiAdded )
+    if ( !timelineApis.isEmpty() && !c_timeline )
     {
-      c_logger.log( Level.SEVERE, "Error: --new-api not specified" );
+      c_logger.log( Level.SEVERE, "Error: Unexpected argument: " + timelineApis.get( 0 ) );
       return false;
     }
-    else if ( !oldApiAdded )
+    setupCache();
+    if ( null != c_batchFile || c_daemon )
     {
-      c_logger.log( Level.SEVERE, "Error: --old-api not specified" );
-      return false;
+      return true;
     }
-    else if ( null == c_outputFile )
+    else if ( c_timeline )
     {
-      c_logger.log( Level.SEVERE, "Error: --output-file not specified" );
-      return false;
+      for ( final String api : timelineApis )
+      {
+        if ( !c_comparison.addTimelineApi( api ) )
+        {
+          return false;
+        }
+      }
+      return c_comparison.validateTimeline();
     }
+    c_comparison.setDefaultConfigFile( c_configFile );
+    return c_comparison.validate();
+  }
 
-    return true;
+  /**
+   * Apply the option to the comparison if it describes the comparison. Other options are ignored.
+   *
+   * @return false if the option is invalid.
+   */
+  private static boolean processComparisonOption( @Nonnull final Comparison comparison,
+                                                  @Nonnull final CLOption option )
+  {
+    switch ( option.getId() )
+    {
+      case CONFIG_OPT:
+        return comparison.setConfigFile( option.getArgument() );
+      case OLD_API_OPT:
+        return comparison.addOldApi( option.getArgument() );
+      case OLD_API_SUPPORT_OPT:
+        return comparison.addOldApiSupport( option.getArgument() );
+      case NEW_API_OPT:
+        return comparison.addNewApi( option.getArgument() );
+      case NEW_API_SUPPORT_OPT:
+        return comparison.addNewApiSupport( option.getArgument() );
+      case OUTPUT_OPT:
+        return comparison.setOutputFile( option.getArgument() );
+      case EXPECT_NO_DIFFERENCES_OPT:
+        comparison.setErrorOnDifferences( true );
+        return true;
+      case INCREMENTAL_OPT:
+        comparison.setIncremental( true );
+        return true;
+      case BASELINE_OPT:
+        return comparison.setBaselineFile( option.getArgument() );
+      case CHECK_OPT:
+      {
+        final DifferenceSeverity severity = parseSeverity( option.getArgument() );
+        if ( null == severity )
+        {
+          c_logger.log( Level.SEVERE, "Error: Unknown severity: " + option.getArgument() );
+          return false;
+        }
+        comparison.setCheckSeverity( severity );
+        return true;
+      }
+      case MIN_SEVERITY_OPT:
+      {
+        final DifferenceSeverity severity = parseSeverity( option.getArgument() );
+        if ( null == severity )
+        {
+          c_logger.log( Level.SEVERE, "Error: Unknown severity: " + option.getArgument() );
+          return false;
+        }
+        comparison.getFilter().setMinSeverity( severity );
+        return true;
+      }
+      case INCLUDE_CODE_OPT:
+        comparison.getFilter().addIncludeCode( option.getArgument() );
+        return true;
+      case EXCLUDE_CODE_OPT:
+        comparison.getFilter().addExcludeCode( option.getArgument() );
+        return true;
+      case INCLUDE_PACKAGE_OPT:
+        comparison.getFilter().addIncludePackage( option.getArgument() );
+        return true;
+      case FORMAT_OPT:
+      {
+        final ReportFormat format = ReportFormat.parse( option.getArgument() );
+        if ( null == format )
+        {
+          c_logger.log( Level.SEVERE, "Error: Unknown format: " + option.getArgument() );
+          return false;
+        }
+        comparison.setFormat( format );
+        return true;
+      }
+      default:
+        return true;
+    }
   }
 
-  private static LabeledFileArchive parseArchive( final String argument )
+  /**
+   * Parse the argument as a positive integer, returning -1 if the argument is not a positive integer.
+   */
+  private static int parsePositiveInteger( @Nonnull final String argument )
   {
-    final String name;
-    final File file;
-    final int separatorIndex = argument.indexOf( "::" );
-    if ( -1 != separatorIndex )
+    try
     {
-      name = argument.substring( 0, separatorIndex );
-      file = new File( argument.substring( separatorIndex + 2 ) );
+      final int value = Integer.parseInt( argument );
+      return value > 0 ? value : -1;
     }
-    else
+    catch ( final NumberFormatException nfe )
+    {
+      return -1;
+    }
+  }
+
+  /**
+   * Parse the optional argument as a severity, returning the lowest severity if the argument is absent
+   * or null if the argument is not a valid severity.
+   */
+  @Nullable
+  private static DifferenceSeverity parseSeverity( @Nullable final String argument )
+  {
+    if ( null == argument )
+    {
+      return DifferenceSeverity.EQUIVALENT;
+    }
+    for ( final DifferenceSeverity severity : DifferenceSeverity.values() )
+    {
+      if ( severity.name().equalsIgnoreCase( argument.replace( '-', '_' ) ) )
+      {
+        return severity;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Parse the argument as a positive number of bytes with an optional k, m or g suffix,
+   * returning -1 if the argument is not a valid size.
+   */
+  private static long parseByteSize( @Nonnull final String argument )
+  {
+    final String value = argument.trim().toLowerCase();
+    final int shift;
+    switch ( value.isEmpty() ? ' ' : value.charAt( value.length() - 1 ) )
+    {
+      case 'k':
+        shift = 10;
+        break;
+      case 'm':
+        shift = 20;
+        break;
+      case 'g':
+        shift = 30;
+        break;
+      default:
+        shift = 0;
+        break;
+    }
+    try
+    {
+      final long size = Long.parseLong( 0 == shift ? value : value.substring( 0, value.length() - 1 ) );
+      return size > 0 && size <= ( Long.MAX_VALUE >> shift ) ? size << shift : -1;
+    }
+    catch ( final NumberFormatException nfe )
     {
-      file = new File( argument );
-      name = file.getName();
+      return -1;
     }
-    return new LabeledFileArchive( name, file );
   }
 
   /**
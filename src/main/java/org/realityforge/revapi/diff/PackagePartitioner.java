@@ -0,0 +1,215 @@
+package org.realityforge.revapi.diff;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.revapi.AnalysisContext;
+
+/**
+ * Splits the analysis of a comparison into partitions that can be analyzed concurrently.
+ * The top-level classes of the old and new apis are distributed between the partitions so that each partition
+ * contains a similar number of classes. Each partition restricts the classes analyzed to its classes while
+ * every archive remains available to resolve types. Revapi reports the members that a class inherits from a
+ * class excluded from the analysis as members of the subclass, so classes connected by inheritance are always
+ * analyzed in the same partition.
+ */
+final class PackagePartitioner
+{
+  private static final Logger c_logger = Logger.getGlobal();
+
+  private PackagePartitioner()
+  {
+  }
+
+  /**
+   * Return a context for each partition of the analysis or null if the analysis can not be partitioned
+   * because every class of the apis is connected by inheritance or the configuration already filters the
+   * classes analyzed.
+   *
+   * @param count the maximum number of partitions.
+   */
+  @Nullable
+  static List<AnalysisContext> partition( @Nonnull final Comparison comparison,
+                                          @Nonnull final AnalysisContext context,
+                                          final int count )
+    throws IOException
+  {
+    final List<Set<String>> groups = groupClasses( collectClasses( comparison ), count );
+    if ( groups.size() < 2 )
+    {
+      if ( c_logger.isLoggable( Level.FINE ) )
+      {
+        c_logger.log( Level.INFO,
+                      "Performing unpartitioned analysis as the classes of the apis are connected by inheritance" );
+      }
+      return null;
+    }
+    final List<AnalysisContext> contexts = new ArrayList<>( groups.size() );
+    for ( final Set<String> classes : groups )
+    {
+      final AnalysisContext partition = IncrementalFilter.restrict( context, classes );
+      if ( null == partition )
+      {
+        return null;
+      }
+      contexts.add( partition );
+    }
+    if ( c_logger.isLoggable( Level.FINE ) )
+    {
+      final StringBuilder sb = new StringBuilder();
+      for ( final Set<String> classes : groups )
+      {
+        sb.append( 0 == sb.length() ? "" : ", " ).append( classes.size() );
+      }
+      c_logger.log( Level.INFO,
+                    "Partitioned analysis into " + groups.size() + " partitions of " + sb + " top-level classes" );
+    }
+    return contexts;
+  }
+
+  /**
+   * Return the top-level classes of the old and new apis grouped so that classes connected by inheritance in
+   * either api are in the same group. Each group is keyed by its first class name.
+   */
+  @Nonnull
+  private static Map<String, Set<String>> collectClasses( @Nonnull final Comparison comparison )
+    throws IOException
+  {
+    final Set<String> classes = new TreeSet<>();
+    final Map<String, String> links = new HashMap<>();
+    collectClasses( comparison.getOldArchives(), classes, links );
+    collectClasses( comparison.getNewArchives(), classes, links );
+    final Map<String, Set<String>> groups = new TreeMap<>();
+    for ( final String className : classes )
+    {
+      groups.computeIfAbsent( findGroup( links, className ), c -> new TreeSet<>() ).add( className );
+    }
+    return groups;
+  }
+
+  /**
+   * Add the top-level classes of the api in the specified archives to the classes and link each class to
+   * its supertypes in the api.
+   * The classes are parsed to determine the class that encloses each nested class and the supertypes.
+   */
+  private static void collectClasses( @Nonnull final List<LabeledFileArchive> archives,
+                                      @Nonnull final Set<String> classes,
+                                      @Nonnull final Map<String, String> links )
+    throws IOException
+  {
+    final Map<String, ClassSummary> summaries = new HashMap<>();
+    for ( final LabeledFileArchive archive : archives )
+    {
+      try ( final ZipFile zipFile = new ZipFile( archive.getFile() ) )
+      {
+        for ( final ZipEntry entry : Collections.list( zipFile.entries() ) )
+        {
+          if ( IncrementalFilter.isClass( entry ) )
+          {
+            final ClassSummary summary = ClassSummary.parse( IncrementalFilter.readEntry( zipFile, entry ) );
+            summaries.putIfAbsent( summary.getName(), summary );
+          }
+        }
+      }
+    }
+    for ( final ClassSummary summary : summaries.values() )
+    {
+      final String name = ClassSummary.getTopLevelName( summary.getName(), summaries );
+      classes.add( name );
+      final List<String> supertypes = new ArrayList<>( summary.getInterfaces() );
+      if ( null != summary.getSuperName() )
+      {
+        supertypes.add( summary.getSuperName() );
+      }
+      for ( final String supertype : supertypes )
+      {
+        if ( summaries.containsKey( supertype ) )
+        {
+          link( links, name, ClassSummary.getTopLevelName( supertype, summaries ) );
+        }
+      }
+    }
+  }
+
+  /**
+   * Merge the groups of the two classes. The group is identified by the first class name in the group
+   * so that the grouping does not depend on the order in which the links are added.
+   */
+  private static void link( @Nonnull final Map<String, String> links,
+                            @Nonnull final String class1,
+                            @Nonnull final String class2 )
+  {
+    final String group1 = findGroup( links, class1 );
+    final String group2 = findGroup( links, class2 );
+    final int comparison = group1.compareTo( group2 );
+    if ( comparison < 0 )
+    {
+      links.put( group2, group1 );
+    }
+    else if ( comparison > 0 )
+    {
+      links.put( group1, group2 );
+    }
+  }
+
+  /**
+   * Return the first class name in the group of the class.
+   */
+  @Nonnull
+  private static String findGroup( @Nonnull final Map<String, String> links, @Nonnull final String className )
+  {
+    String group = className;
+    String parent;
+    while ( null != ( parent = links.get( group ) ) )
+    {
+      group = parent;
+    }
+    return group;
+  }
+
+  /**
+   * Distribute the groups of classes between at most the specified number of partitions, assigning the largest
+   * remaining group to the partition with the fewest classes so that the partitions are of similar size.
+   * The partitioning only depends on the classes so that it is stable between runs.
+   */
+  @Nonnull
+  private static List<Set<String>> groupClasses( @Nonnull final Map<String, Set<String>> groups, final int count )
+  {
+    final List<Set<String>> sorted = new ArrayList<>( groups.values() );
+    // The sort is stable so groups of the same size remain ordered by name
+    sorted.sort( ( a, b ) -> Integer.compare( b.size(), a.size() ) );
+    final List<Set<String>> partitions = new ArrayList<>();
+    for ( final Set<String> classes : sorted )
+    {
+      if ( partitions.size() < count )
+      {
+        partitions.add( new TreeSet<>( classes ) );
+      }
+      else
+      {
+        Set<String> smallest = partitions.get( 0 );
+        for ( final Set<String> partition : partitions )
+        {
+          if ( partition.size() < smallest.size() )
+          {
+            smallest = partition;
+          }
+        }
+        smallest.addAll( classes );
+      }
+    }
+    return partitions;
+  }
+}
@@ -0,0 +1,201 @@
+package org.realityforge.revapi.diff;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Accumulates the wall time, cpu time and bytes allocated by each phase of the tool.
+ * Phases performed multiple times, such as when performing a batch of comparisons, are summed.
+ * The cpu time and allocated bytes are measured for the thread that performs the phase, plus any work that
+ * the phase delegates to worker threads and records with {@link #recordWorker(String, Sample)}. They are
+ * reported as -1 if the JVM does not support measuring them.
+ */
+final class PhaseStats
+{
+  static final String OPTIONS = "options";
+  static final String SETUP = "setup";
+  static final String CONTEXT = "context";
+  static final String ANALYZE = "analyze";
+  static final String SORT = "sort";
+  static final String EMIT = "emit";
+  private static final Logger c_logger = Logger.getGlobal();
+  @Nonnull
+  private final ThreadMXBean _threadBean = ManagementFactory.getThreadMXBean();
+  private final boolean _cpuTimeSupported = _threadBean.isCurrentThreadCpuTimeSupported();
+  private final boolean _allocatedBytesSupported =
+    _threadBean instanceof com.sun.management.ThreadMXBean &&
+    ( (com.sun.management.ThreadMXBean) _threadBean ).isThreadAllocatedMemorySupported();
+  /**
+   * Totals for each phase in the order the phases are performed.
+   * Each value contains the count, wall time, cpu time and allocated bytes.
+   */
+  @Nonnull
+  private final Map<String, long[]> _phases = new LinkedHashMap<>();
+  private int _comparisonCount;
+  private long _reportCount;
+  private long _differenceCount;
+
+  PhaseStats()
+  {
+    for ( final String phase : new String[]{ OPTIONS, SETUP, CONTEXT, ANALYZE, SORT, EMIT } )
+    {
+      _phases.put( phase, new long[ 4 ] );
+    }
+  }
+
+  /**
+   * Capture the current values of the measures so that they can be recorded against a phase once it completes.
+   */
+  @Nonnull
+  Sample start()
+  {
+    return new Sample( System.nanoTime(), getCpuTime(), getAllocatedBytes() );
+  }
+
+  /**
+   * Record the resources consumed since the sample was captured against the phase.
+   */
+  void record( @Nonnull final String phase, @Nonnull final Sample start )
+  {
+    final long wallTime = System.nanoTime() - start._wallTime;
+    final long cpuTime = getCpuTime() - start._cpuTime;
+    final long allocatedBytes = getAllocatedBytes() - start._allocatedBytes;
+    synchronized ( this )
+    {
+      final long[] totals = _phases.get( phase );
+      totals[ 0 ]++;
+      totals[ 1 ] += wallTime;
+      totals[ 2 ] += cpuTime;
+      totals[ 3 ] += allocatedBytes;
+    }
+  }
+
+  /**
+   * Record the cpu time and bytes allocated by the current thread since the sample was captured against the
+   * phase. The wall time and count of the phase are not changed as they are recorded by the thread that
+   * performs the phase and waits for the worker threads.
+   */
+  void recordWorker( @Nonnull final String phase, @Nonnull final Sample start )
+  {
+    final long cpuTime = getCpuTime() - start._cpuTime;
+    final long allocatedBytes = getAllocatedBytes() - start._allocatedBytes;
+    synchronized ( this )
+    {
+      final long[] totals = _phases.get( phase );
+      totals[ 2 ] += cpuTime;
+      totals[ 3 ] += allocatedBytes;
+    }
+  }
+
+  synchronized void recordComparison( final int reportCount, final int differenceCount )
+  {
+    _comparisonCount++;
+    _reportCount += reportCount;
+    _differenceCount += differenceCount;
+  }
+
+  /**
+   * Log the stats if verbose output is enabled.
+   */
+  synchronized void log()
+  {
+    if ( c_logger.isLoggable( Level.FINE ) )
+    {
+      for ( final Map.Entry<String, long[]> entry : _phases.entrySet() )
+      {
+        final long[] totals = entry.getValue();
+        if ( 0 != totals[ 0 ] )
+        {
+          c_logger.log( Level.INFO,
+                        "Phase " + entry.getKey() + ": wall " + totals[ 1 ] / 1000000 + "ms, cpu " +
+                        ( _cpuTimeSupported ? totals[ 2 ] / 1000000 + "ms" : "unknown" ) + ", allocated " +
+                        ( _allocatedBytesSupported ? totals[ 3 ] + " bytes" : "unknown" ) );
+        }
+      }
+      c_logger.log( Level.INFO, "Peak heap usage: " + getPeakHeapUsage() + " bytes" );
+    }
+  }
+
+  synchronized void write( @Nonnull final File file )
+    throws IOException
+  {
+    final JsonObjectBuilder phases = Json.createObjectBuilder();
+    for ( final Map.Entry<String, long[]> entry : _phases.entrySet() )
+    {
+      final long[] totals = entry.getValue();
+      phases.add( entry.getKey(),
+                  Json.createObjectBuilder()
+                    .add( "count", totals[ 0 ] )
+                    .add( "wallTimeNanos", totals[ 1 ] )
+                    .add( "cpuTimeNanos", _cpuTimeSupported ? totals[ 2 ] : -1 )
+                    .add( "allocatedBytes", _allocatedBytesSupported ? totals[ 3 ] : -1 ) );
+    }
+    final Map<String, Object> config = Collections.singletonMap( JsonGenerator.PRETTY_PRINTING, true );
+    try ( final OutputStream output = new FileOutputStream( file );
+          final JsonWriter writer = Json.createWriterFactory( config ).createWriter( output ) )
+    {
+      writer.writeObject( Json.createObjectBuilder()
+                            .add( "comparisons", _comparisonCount )
+                            .add( "reports", _reportCount )
+                            .add( "differences", _differenceCount )
+                            .add( "peakHeapBytes", getPeakHeapUsage() )
+                            .add( "phases", phases )
+                            .build() );
+    }
+  }
+
+  private long getCpuTime()
+  {
+    return _cpuTimeSupported ? _threadBean.getCurrentThreadCpuTime() : 0;
+  }
+
+  private long getAllocatedBytes()
+  {
+    return _allocatedBytesSupported ?
+           ( (com.sun.management.ThreadMXBean) _threadBean ).getThreadAllocatedBytes( Thread.currentThread().getId() ) :
+           0;
+  }
+
+  private static long getPeakHeapUsage()
+  {
+    long peak = 0;
+    for ( final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+    {
+      if ( MemoryType.HEAP == pool.getType() )
+      {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  static final class Sample
+  {
+    private final long _wallTime;
+    private final long _cpuTime;
+    private final long _allocatedBytes;
+
+    private Sample( final long wallTime, final long cpuTime, final long allocatedBytes )
+    {
+      _wallTime = wallTime;
+      _cpuTime = cpuTime;
+      _allocatedBytes = allocatedBytes;
+    }
+  }
+}
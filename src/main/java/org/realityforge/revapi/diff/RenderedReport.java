@@ -0,0 +1,91 @@
+package org.realityforge.revapi.diff;
+
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.revapi.Element;
+import org.revapi.Report;
+
+/**
+ * The elements of a report rendered as human readable strings.
+ * Each element is rendered at most once, when first required, and the rendered strings are shared by
+ * the key used to order the report and by every difference of the report.
+ */
+final class RenderedReport
+{
+  @Nonnull
+  private final Report _report;
+  private boolean _rendered;
+  @Nullable
+  private String _newElement;
+  @Nullable
+  private String _oldElement;
+  private boolean _elementUnchanged;
+  @Nullable
+  private String _key;
+
+  RenderedReport( @Nonnull final Report report )
+  {
+    _report = Objects.requireNonNull( report );
+  }
+
+  /**
+   * Return the key used to order reports.
+   * The elements render the same string from toString() so the key matches concatenating the elements.
+   */
+  @Nonnull
+  String getKey()
+  {
+    if ( null == _key )
+    {
+      render();
+      _key = _newElement + "-" + _oldElement;
+    }
+    return _key;
+  }
+
+  @Nullable
+  String getNewElement()
+  {
+    render();
+    return _newElement;
+  }
+
+  /**
+   * Return the rendered old element. This is the same instance as the rendered new element if the
+   * element is unchanged.
+   */
+  @Nullable
+  String getOldElement()
+  {
+    render();
+    return _oldElement;
+  }
+
+  /**
+   * Return true if the report has both a new and old element and they render identically.
+   */
+  boolean isElementUnchanged()
+  {
+    render();
+    return _elementUnchanged;
+  }
+
+  private void render()
+  {
+    if ( !_rendered )
+    {
+      _rendered = true;
+      _newElement = render( _report.getNewElement() );
+      final String oldElement = render( _report.getOldElement() );
+      _elementUnchanged = null != _newElement && _newElement.equals( oldElement );
+      _oldElement = _elementUnchanged ? _newElement : oldElement;
+    }
+  }
+
+  @Nullable
+  private static String render( @Nullable final Element element )
+  {
+    return null == element ? null : element.getFullHumanReadableString();
+  }
+}
@@ -0,0 +1,55 @@
+package org.realityforge.revapi.diff;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The formats in which the report can be written.
+ */
+enum ReportFormat
+{
+  /**
+   * A pretty printed json array of difference objects.
+   */
+  JSON( ".json" ),
+  /**
+   * Newline delimited json with one compact difference object per line.
+   */
+  NDJSON( ".ndjson" ),
+  /**
+   * A length-prefixed binary format with interned strings that can be read by {@link BinaryReportReader}.
+   */
+  BINARY( ".bin" );
+  @Nonnull
+  private final String _extension;
+
+  ReportFormat( @Nonnull final String extension )
+  {
+    _extension = extension;
+  }
+
+  /**
+   * Return the extension of files written in the format, including the leading period.
+   */
+  @Nonnull
+  String getExtension()
+  {
+    return _extension;
+  }
+
+  /**
+   * Return the format with the specified name or null if no such format exists.
+   */
+  @Nullable
+  static ReportFormat parse( @Nonnull final String name )
+  {
+    for ( final ReportFormat format : values() )
+    {
+      if ( format.name().equalsIgnoreCase( name ) )
+      {
+        return format;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,77 @@
+package org.realityforge.revapi.diff;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A writer that emits differences in one of the report formats.
+ * The classification and attachments are arrays of alternating keys and values in the order they are emitted.
+ */
+interface ReportWriter
+  extends Closeable
+{
+  @Nonnull
+  static ReportWriter create( @Nonnull final ReportFormat format, @Nonnull final Path path )
+    throws IOException
+  {
+    switch ( format )
+    {
+      case NDJSON:
+        return new JsonDifferenceWriter( JsonReportWriter.create( path, true ), false );
+      case BINARY:
+        return BinaryReportWriter.create( path );
+      default:
+        return new JsonDifferenceWriter( JsonReportWriter.create( path, false ), true );
+    }
+  }
+
+  void writeStart()
+    throws IOException;
+
+  void writeDifference( @Nonnull String code,
+                        @Nonnull String description,
+                        @Nullable String newElement,
+                        @Nullable String oldElement,
+                        @Nonnull String[] classification,
+                        @Nonnull String[] attachments )
+    throws IOException;
+
+  void writeEnd()
+    throws IOException;
+
+  /**
+   * Return an encoder that serializes shards of differences independently of this writer and writes the encoded
+   * shards to the report, or null if the format requires that differences are written sequentially.
+   * This must be invoked after {@link #writeStart()}.
+   */
+  @Nullable
+  default ShardEncoder getShardEncoder()
+  {
+    return null;
+  }
+
+  /**
+   * Encodes contiguous shards of differences into the bytes that the writer would emit for them and writes the
+   * encoded shards to the report. Shards may be encoded concurrently from multiple threads but must be written
+   * from the thread that uses the writer in the order of the differences they contain.
+   */
+  interface ShardEncoder
+  {
+    /**
+     * @param first true if the shard contains the first difference of the report.
+     */
+    @Nonnull
+    byte[] encode( @Nonnull List<DifferenceRecord> records, boolean first )
+      throws IOException;
+
+    /**
+     * Write a shard produced by {@link #encode(List, boolean)} to the report.
+     */
+    void write( @Nonnull byte[] shard )
+      throws IOException;
+  }
+}
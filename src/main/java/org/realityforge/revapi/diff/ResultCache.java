@@ -0,0 +1,378 @@
+package org.realityforge.revapi.diff;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A persistent cache of reports keyed by a digest of the inputs to the comparison.
+ * Entries are written to a temporary file and then renamed so that multiple processes can share the same cache
+ * directory and an interrupted run can not leave a partial entry. Entries record the length and checksum of the
+ * report so that a truncated or corrupt entry is treated as a miss. The least recently used entries are evicted
+ * when the cache exceeds the maximum size.
+ * The digests of support archives are recorded in an index so that unchanged support archives
+ * are not read when computing the key.
+ */
+final class ResultCache
+{
+  private static final Logger c_logger = Logger.getGlobal();
+  private static final String ENTRY_SUFFIX = ".cache";
+  /**
+   * The magic number that starts an entry. It is changed whenever the layout of an entry changes so that
+   * entries written by other versions are discarded.
+   */
+  private static final int ENTRY_MAGIC = 0x52564432;
+  /**
+   * The size of an entry excluding the report, being the magic number, the difference count and the length
+   * of the report followed by the checksum of the report.
+   */
+  private static final int ENTRY_OVERHEAD = 4 + 4 + 8 + 4;
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+  private static final String SUPPORT_INDEX_NAME = "support-archives.idx";
+  private static final int MAX_SUPPORT_INDEX_ENTRIES = 4096;
+  @Nonnull
+  private final Path _directory;
+  private final long _maxSize;
+  @Nonnull
+  private final String _toolVersion;
+  @Nonnull
+  private final ArchiveDigestIndex _supportIndex;
+
+  ResultCache( @Nonnull final Path directory, final long maxSize, @Nonnull final String toolVersion )
+  {
+    _directory = Objects.requireNonNull( directory );
+    _maxSize = maxSize;
+    _toolVersion = Objects.requireNonNull( toolVersion );
+    _supportIndex = new ArchiveDigestIndex( directory.resolve( SUPPORT_INDEX_NAME ), MAX_SUPPORT_INDEX_ENTRIES );
+  }
+
+  @Nonnull
+  static Path getDefaultDirectory()
+  {
+    return new File( System.getProperty( "user.home" ), ".cache" + File.separator + "revapi-diff" ).toPath();
+  }
+
+  /**
+   * Compute the key for the comparison from the content and labels of every archive,
+   * the effective configuration, the report format, the difference filter, the content of any baseline report and the version of the tool.
+   */
+  @Nonnull
+  String computeKey( @Nonnull final Comparison comparison )
+    throws IOException
+  {
+    final MessageDigest digest = newDigest();
+    update( digest, _toolVersion );
+    update( digest, comparison.getConfiguration() );
+    update( digest, comparison.getFormat().name() );
+    update( digest, comparison.getFilter().describe() );
+    update( digest, comparison.getOldArchives(), null );
+    update( digest, comparison.getOldSupportArchives(), _supportIndex );
+    update( digest, comparison.getNewArchives(), null );
+    update( digest, comparison.getNewSupportArchives(), _supportIndex );
+    _supportIndex.saveIfModified();
+    final File baselineFile = comparison.getBaselineFile();
+    updateLength( digest, null != baselineFile ? 1 : 0 );
+    if ( null != baselineFile )
+    {
+      update( digest, baselineFile );
+    }
+    return toHex( digest.digest() );
+  }
+
+  /**
+   * Copy the cached report into the output file if present.
+   * An entry that is truncated or corrupt is treated as absent and deleted so that the comparison is analyzed
+   * and the entry replaced. The output file may be partially written in that case but is then overwritten.
+   *
+   * @return the number of differences in the report or -1 if the key is not present in the cache.
+   */
+  int restore( @Nonnull final String key, @Nonnull final File outputFile )
+  {
+    final Path entry = _directory.resolve( key + ENTRY_SUFFIX );
+    try
+    {
+      final int differenceCount = copyReport( entry, outputFile.toPath() );
+      if ( -1 == differenceCount )
+      {
+        discard( entry, "corrupt" );
+        return -1;
+      }
+      // Record the use of the entry for the purposes of eviction
+      Files.setLastModifiedTime( entry, FileTime.fromMillis( System.currentTimeMillis() ) );
+      return differenceCount;
+    }
+    catch ( final NoSuchFileException e )
+    {
+      return -1;
+    }
+    catch ( final IOException e )
+    {
+      discard( entry, "unreadable: " + e );
+      return -1;
+    }
+  }
+
+  /**
+   * Copy the report from the entry to the output file, verifying the length and checksum of the report.
+   *
+   * @return the number of differences in the report or -1 if the entry is not a valid entry.
+   */
+  private static int copyReport( @Nonnull final Path entry, @Nonnull final Path outputFile )
+    throws IOException
+  {
+    final long entrySize = Files.size( entry );
+    try ( final DataInputStream input = new DataInputStream( Files.newInputStream( entry ) ) )
+    {
+      if ( entrySize < ENTRY_OVERHEAD || ENTRY_MAGIC != input.readInt() )
+      {
+        return -1;
+      }
+      final int differenceCount = input.readInt();
+      final long length = input.readLong();
+      if ( differenceCount < 0 || ENTRY_OVERHEAD + length != entrySize )
+      {
+        return -1;
+      }
+      final CRC32 crc = new CRC32();
+      try ( final OutputStream output = Files.newOutputStream( outputFile ) )
+      {
+        final byte[] data = new byte[ COPY_BUFFER_SIZE ];
+        long remaining = length;
+        while ( remaining > 0 )
+        {
+          final int count = input.read( data, 0, (int) Math.min( data.length, remaining ) );
+          if ( -1 == count )
+          {
+            return -1;
+          }
+          crc.update( data, 0, count );
+          output.write( data, 0, count );
+          remaining -= count;
+        }
+      }
+      return (int) crc.getValue() == input.readInt() ? differenceCount : -1;
+    }
+  }
+
+  /**
+   * Delete an entry that could not be restored.
+   */
+  private static void discard( @Nonnull final Path entry, @Nonnull final String reason )
+  {
+    if ( c_logger.isLoggable( Level.FINE ) )
+    {
+      c_logger.log( Level.INFO, "Discarding cache entry " + entry + " as it is " + reason );
+    }
+    try
+    {
+      Files.deleteIfExists( entry );
+    }
+    catch ( final IOException e )
+    {
+      c_logger.log( Level.WARNING, "Warning: Unable to delete cache entry " + entry + ": " + e );
+    }
+  }
+
+  /**
+   * Store the report in the cache and evict any entries required to keep the cache within bounds.
+   * Failures are logged but otherwise ignored as the cache is merely an optimization.
+   */
+  void store( @Nonnull final String key, @Nonnull final File reportFile, final int differenceCount )
+  {
+    try
+    {
+      Files.createDirectories( _directory );
+      final Path tmpFile = Files.createTempFile( _directory, key, ".tmp" );
+      try
+      {
+        try ( final DataOutputStream output = new DataOutputStream( Files.newOutputStream( tmpFile ) ) )
+        {
+          output.writeInt( ENTRY_MAGIC );
+          output.writeInt( differenceCount );
+          output.writeLong( Files.size( reportFile.toPath() ) );
+          final CRC32 crc = new CRC32();
+          try ( final InputStream input = Files.newInputStream( reportFile.toPath() ) )
+          {
+            final byte[] data = new byte[ COPY_BUFFER_SIZE ];
+            int count;
+            while ( -1 != ( count = input.read( data ) ) )
+            {
+              crc.update( data, 0, count );
+              output.write( data, 0, count );
+            }
+          }
+          output.writeInt( (int) crc.getValue() );
+        }
+        final Path entry = _directory.resolve( key + ENTRY_SUFFIX );
+        try
+        {
+          Files.move( tmpFile, entry, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( final AtomicMoveNotSupportedException e )
+        {
+          Files.move( tmpFile, entry, StandardCopyOption.REPLACE_EXISTING );
+        }
+      }
+      finally
+      {
+        Files.deleteIfExists( tmpFile );
+      }
+      evict();
+    }
+    catch ( final IOException e )
+    {
+      c_logger.log( Level.WARNING, "Warning: Unable to store result in cache: " + e );
+    }
+  }
+
+  private void evict()
+    throws IOException
+  {
+    final List<CacheEntry> entries = new ArrayList<>();
+    try ( final Stream<Path> files = Files.list( _directory ) )
+    {
+      for ( final Path file : files.collect( Collectors.toList() ) )
+      {
+        if ( file.getFileName().toString().endsWith( ENTRY_SUFFIX ) )
+        {
+          try
+          {
+            entries.add( new CacheEntry( file, Files.size( file ), Files.getLastModifiedTime( file ).toMillis() ) );
+          }
+          catch ( final NoSuchFileException e )
+          {
+            // Evicted by a concurrent process
+          }
+        }
+      }
+    }
+    long size = entries.stream().mapToLong( e -> e._size ).sum();
+    if ( size > _maxSize )
+    {
+      entries.sort( Comparator.comparingLong( e -> e._lastUsed ) );
+      for ( final CacheEntry entry : entries )
+      {
+        if ( size <= _maxSize )
+        {
+          break;
+        }
+        Files.deleteIfExists( entry._file );
+        size -= entry._size;
+      }
+    }
+  }
+
+  @Nonnull
+  private static MessageDigest newDigest()
+  {
+    try
+    {
+      return MessageDigest.getInstance( "SHA-256" );
+    }
+    catch ( final NoSuchAlgorithmException e )
+    {
+      throw new IllegalStateException( e );
+    }
+  }
+
+  private static void update( @Nonnull final MessageDigest digest, @Nonnull final String value )
+  {
+    final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+    updateLength( digest, bytes.length );
+    digest.update( bytes );
+  }
+
+  /**
+   * Add the labels and content of the archives to the digest.
+   * The digests of the archives are retrieved from the index if supplied.
+   */
+  private static void update( @Nonnull final MessageDigest digest,
+                              @Nonnull final List<LabeledFileArchive> archives,
+                              @Nullable final ArchiveDigestIndex index )
+    throws IOException
+  {
+    updateLength( digest, archives.size() );
+    for ( final LabeledFileArchive archive : archives )
+    {
+      update( digest, archive.getName() );
+      digest.update( null != index ? index.getDigest( archive ) : archive.getDigest() );
+    }
+  }
+
+  private static void update( @Nonnull final MessageDigest digest, @Nonnull final File file )
+    throws IOException
+  {
+    final byte[] data = new byte[ COPY_BUFFER_SIZE ];
+    try ( final InputStream input = Files.newInputStream( file.toPath() ) )
+    {
+      int count;
+      while ( -1 != ( count = input.read( data ) ) )
+      {
+        digest.update( data, 0, count );
+      }
+    }
+  }
+
+  private static void updateLength( @Nonnull final MessageDigest digest, final long length )
+  {
+    for ( int i = 56; i >= 0; i -= 8 )
+    {
+      digest.update( (byte) ( length >>> i ) );
+    }
+  }
+
+  @Nonnull
+  private static String toHex( @Nonnull final byte[] bytes )
+  {
+    final StringBuilder sb = new StringBuilder( bytes.length * 2 );
+    for ( final byte b : bytes )
+    {
+      sb.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+    }
+    return sb.toString();
+  }
+
+  @Nullable
+  static String getToolVersion()
+  {
+    return Main.class.getPackage().getImplementationVersion();
+  }
+
+  private static final class CacheEntry
+  {
+    @Nonnull
+    private final Path _file;
+    private final long _size;
+    private final long _lastUsed;
+
+    CacheEntry( @Nonnull final Path file, final long size, final long lastUsed )
+    {
+      _file = file;
+      _size = size;
+      _lastUsed = lastUsed;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package org.realityforge.revapi.diff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import javax.annotation.Nonnull;
+
+/**
+ * Emits differences by grouping them into contiguous shards that are encoded in parallel on the common
+ * fork-join pool. The encoded shards are written in order so the report is identical to writing each
+ * difference sequentially. At most a bounded number of shards are pending at any time so memory usage
+ * does not grow with the size of the report. The cpu time and bytes allocated encoding the shards are
+ * recorded against the emit phase.
+ */
+final class ShardedReportEmitter
+{
+  /**
+   * The number of differences in each shard.
+   */
+  private static final int SHARD_SIZE = 1024;
+  @Nonnull
+  private final ReportWriter.ShardEncoder _encoder;
+  @Nonnull
+  private final PhaseStats _stats;
+  private final int _maxPendingShards;
+  @Nonnull
+  private final ArrayDeque<CompletableFuture<byte[]>> _pending = new ArrayDeque<>();
+  @Nonnull
+  private List<DifferenceRecord> _shard = new ArrayList<>( SHARD_SIZE );
+  private boolean _first = true;
+
+  ShardedReportEmitter( @Nonnull final ReportWriter.ShardEncoder encoder, @Nonnull final PhaseStats stats )
+  {
+    _encoder = Objects.requireNonNull( encoder );
+    _stats = Objects.requireNonNull( stats );
+    _maxPendingShards = 2 * ForkJoinPool.getCommonPoolParallelism();
+  }
+
+  void add( @Nonnull final DifferenceRecord record )
+    throws IOException
+  {
+    _shard.add( record );
+    if ( SHARD_SIZE == _shard.size() )
+    {
+      submitShard();
+    }
+  }
+
+  /**
+   * Encode any remaining differences and write every pending shard.
+   */
+  void finish()
+    throws IOException
+  {
+    if ( !_shard.isEmpty() )
+    {
+      submitShard();
+    }
+    while ( !_pending.isEmpty() )
+    {
+      writeNextShard();
+    }
+  }
+
+  private void submitShard()
+    throws IOException
+  {
+    if ( _pending.size() >= _maxPendingShards )
+    {
+      writeNextShard();
+    }
+    final List<DifferenceRecord> shard = _shard;
+    final boolean first = _first;
+    _shard = new ArrayList<>( SHARD_SIZE );
+    _first = false;
+    _pending.add( CompletableFuture.supplyAsync( () -> encode( shard, first ) ) );
+  }
+
+  @Nonnull
+  private byte[] encode( @Nonnull final List<DifferenceRecord> shard, final boolean first )
+  {
+    final PhaseStats.Sample start = _stats.start();
+    try
+    {
+      return _encoder.encode( shard, first );
+    }
+    catch ( final IOException e )
+    {
+      throw new UncheckedIOException( e );
+    }
+    finally
+    {
+      _stats.recordWorker( PhaseStats.EMIT, start );
+    }
+  }
+
+  private void writeNextShard()
+    throws IOException
+  {
+    final byte[] shard;
+    try
+    {
+      shard = _pending.remove().join();
+    }
+    catch ( final CompletionException e )
+    {
+      final Throwable cause = e.getCause();
+      if ( cause instanceof UncheckedIOException )
+      {
+        throw ( (UncheckedIOException) cause ).getCause();
+      }
+      throw e;
+    }
+    _encoder.write( shard );
+  }
+}
@@ -0,0 +1,307 @@
+package org.realityforge.revapi.diff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.revapi.Difference;
+import org.revapi.Report;
+
+/**
+ * Collects differences as compact records as each report arrives rather than retaining the reports.
+ * When the number of buffered records reaches the buffer size or the approximate number of bytes retained
+ * by the buffered records reaches the byte budget, the records are sorted and spilled to a temporary file.
+ * The sorted runs are merged when the records are iterated so that memory is bounded by the buffer size
+ * rather than by the number of differences. The strings of the buffered records are deduplicated using an
+ * intern table that is cleared whenever the buffer is spilled.
+ */
+final class SpillingCollector
+  implements Closeable
+{
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+  /**
+   * The maximum number of runs merged at once. Larger numbers of runs are merged in multiple passes
+   * so that the number of open files and read buffers is bounded.
+   */
+  private static final int MAX_MERGE_WIDTH = 64;
+  private final int _bufferSize;
+  private final long _byteBudget;
+  @Nonnull
+  private final List<DifferenceRecord> _buffer = new ArrayList<>();
+  /**
+   * The approximate number of bytes retained by the buffered records excluding the interned strings.
+   */
+  private long _bufferBytes;
+  @Nonnull
+  private final List<Run> _runs = new ArrayList<>();
+  @Nonnull
+  private final InternTable _strings = new InternTable();
+  private int _reportCount;
+
+  /**
+   * @param bufferSize the maximum number of records buffered before spilling.
+   * @param byteBudget the approximate maximum number of bytes retained by buffered records before spilling.
+   */
+  SpillingCollector( final int bufferSize, final long byteBudget )
+  {
+    _bufferSize = bufferSize;
+    _byteBudget = byteBudget;
+  }
+
+  /**
+   * Add the differences from the report, spilling the buffer if it is full.
+   * The report is rendered and its differences sorted before acquiring the lock so that concurrent analyses
+   * only contend to intern the strings and buffer the records.
+   * IO errors are rethrown as unchecked exceptions as the reporter is unable to throw checked exceptions.
+   */
+  void add( @Nonnull final Report report, @Nonnull final List<Difference> differences )
+  {
+    final DifferenceRecord.PreparedReport prepared = DifferenceRecord.prepare( report, differences );
+    synchronized ( this )
+    {
+      for ( final DifferenceRecord record : prepared.toRecords( _reportCount++, _strings ) )
+      {
+        _buffer.add( record );
+        _bufferBytes += record.estimateSize();
+      }
+      if ( _buffer.size() >= _bufferSize || _bufferBytes + _strings.getRetainedSize() >= _byteBudget )
+      {
+        try
+        {
+          spill();
+        }
+        catch ( final IOException e )
+        {
+          throw new UncheckedIOException( e );
+        }
+      }
+    }
+  }
+
+  synchronized int getReportCount()
+  {
+    return _reportCount;
+  }
+
+  /**
+   * Sort the buffered records, spilling them to disk if any runs have already been spilled.
+   * If there are too many runs to merge at once then groups of runs are merged into larger runs.
+   */
+  synchronized void finish()
+    throws IOException
+  {
+    if ( _runs.isEmpty() )
+    {
+      _buffer.sort( DifferenceRecord.ORDER );
+    }
+    else
+    {
+      if ( !_buffer.isEmpty() )
+      {
+        spill();
+      }
+      while ( _runs.size() > MAX_MERGE_WIDTH )
+      {
+        final List<Run> group = new ArrayList<>( _runs.subList( 0, MAX_MERGE_WIDTH ) );
+        _runs.subList( 0, MAX_MERGE_WIDTH ).clear();
+        final Run run = createRun( group.stream().mapToInt( r -> r._size ).sum() );
+        try ( final DataOutputStream output = run.openOutput() )
+        {
+          merge( group, record -> record.write( output ) );
+        }
+        finally
+        {
+          for ( final Run merged : group )
+          {
+            Files.deleteIfExists( merged._path );
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Pass each record to the consumer in report order. The collector must be finished before invoking this method.
+   */
+  synchronized void forEach( @Nonnull final RecordConsumer consumer )
+    throws IOException
+  {
+    if ( _runs.isEmpty() )
+    {
+      for ( final DifferenceRecord record : _buffer )
+      {
+        consumer.accept( record );
+      }
+    }
+    else
+    {
+      merge( _runs, consumer );
+    }
+  }
+
+  @Override
+  public synchronized void close()
+    throws IOException
+  {
+    _buffer.clear();
+    _bufferBytes = 0;
+    _strings.clear();
+    for ( final Run run : _runs )
+    {
+      Files.deleteIfExists( run._path );
+    }
+    _runs.clear();
+  }
+
+  private void spill()
+    throws IOException
+  {
+    _buffer.sort( DifferenceRecord.ORDER );
+    final Run run = createRun( _buffer.size() );
+    try ( final DataOutputStream output = run.openOutput() )
+    {
+      for ( final DifferenceRecord record : _buffer )
+      {
+        record.write( output );
+      }
+    }
+    _buffer.clear();
+    _bufferBytes = 0;
+    _strings.clear();
+  }
+
+  /**
+   * Create a temporary file for a run and add it to the runs to be merged.
+   */
+  @Nonnull
+  private Run createRun( final int size )
+    throws IOException
+  {
+    final Run run = new Run( Files.createTempFile( "revapi-diff", ".run" ), size );
+    _runs.add( run );
+    return run;
+  }
+
+  /**
+   * Perform a k-way merge of the sorted runs.
+   */
+  private static void merge( @Nonnull final List<Run> runs, @Nonnull final RecordConsumer consumer )
+    throws IOException
+  {
+    final PriorityQueue<RunReader> queue =
+      new PriorityQueue<>( runs.size(), ( r1, r2 ) -> DifferenceRecord.ORDER.compare( r1._current, r2._current ) );
+    final List<RunReader> readers = new ArrayList<>( runs.size() );
+    try
+    {
+      for ( final Run run : runs )
+      {
+        final RunReader reader = new RunReader( run._path );
+        readers.add( reader );
+        if ( reader.advance() )
+        {
+          queue.add( reader );
+        }
+      }
+      while ( !queue.isEmpty() )
+      {
+        final RunReader reader = queue.poll();
+        assert null != reader._current;
+        consumer.accept( reader._current );
+        if ( reader.advance() )
+        {
+          queue.add( reader );
+        }
+      }
+    }
+    finally
+    {
+      for ( final RunReader reader : readers )
+      {
+        reader.close();
+      }
+    }
+  }
+
+  @FunctionalInterface
+  interface RecordConsumer
+  {
+    void accept( @Nonnull DifferenceRecord record )
+      throws IOException;
+  }
+
+  /**
+   * A temporary file containing a sorted sequence of records preceded by the number of records.
+   */
+  private static final class Run
+  {
+    @Nonnull
+    private final Path _path;
+    private final int _size;
+
+    Run( @Nonnull final Path path, final int size )
+    {
+      _path = path;
+      _size = size;
+    }
+
+    @Nonnull
+    DataOutputStream openOutput()
+      throws IOException
+    {
+      final DataOutputStream output =
+        new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( _path ), IO_BUFFER_SIZE ) );
+      output.writeInt( _size );
+      return output;
+    }
+  }
+
+  private static final class RunReader
+    implements Closeable
+  {
+    @Nonnull
+    private final DataInputStream _input;
+    private int _remaining;
+    @Nullable
+    private DifferenceRecord _current;
+
+    RunReader( @Nonnull final Path run )
+      throws IOException
+    {
+      _input = new DataInputStream( new BufferedInputStream( Files.newInputStream( run ), IO_BUFFER_SIZE ) );
+      _remaining = _input.readInt();
+    }
+
+    /**
+     * Read the next record from the run, returning false if the run is exhausted.
+     */
+    boolean advance()
+      throws IOException
+    {
+      if ( 0 == _remaining )
+      {
+        _current = null;
+        return false;
+      }
+      _remaining--;
+      _current = DifferenceRecord.read( _input );
+      return true;
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      _input.close();
+    }
+  }
+}
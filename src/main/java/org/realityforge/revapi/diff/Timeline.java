@@ -0,0 +1,219 @@
+package org.realityforge.revapi.diff;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A sequence of comparisons between each pair of consecutive versions of an api.
+ * Each step writes a separate report alongside the summary file and the summary records the version
+ * in which each element was added or removed.
+ */
+final class Timeline
+{
+  private static final Logger c_logger = Logger.getGlobal();
+  /**
+   * The codes of differences that indicate the new element was added.
+   */
+  private static final Set<String> ADDED_CODES =
+    Collections.unmodifiableSet( new HashSet<>( Arrays.asList( "java.class.added",
+                                                               "java.method.added",
+                                                               "java.method.addedToInterface",
+                                                               "java.field.added" ) ) );
+  /**
+   * The codes of differences that indicate the old element was removed.
+   */
+  private static final Set<String> REMOVED_CODES =
+    Collections.unmodifiableSet( new HashSet<>( Arrays.asList( "java.class.removed",
+                                                               "java.method.removed",
+                                                               "java.field.removed" ) ) );
+  @Nonnull
+  private final File _summaryFile;
+  @Nonnull
+  private final List<Step> _steps = new ArrayList<>();
+
+  private Timeline( @Nonnull final File summaryFile )
+  {
+    _summaryFile = summaryFile;
+  }
+
+  /**
+   * Create the timeline from the timeline apis of the comparison, logging an error and returning null if invalid.
+   * The output file of the comparison is the summary file and the report of each step is written to the same directory.
+   */
+  @Nullable
+  static Timeline create( @Nonnull final Comparison comparison )
+  {
+    final List<LabeledFileArchive> archives = comparison.getTimelineArchives();
+    final Set<String> names = new HashSet<>();
+    for ( final LabeledFileArchive archive : archives )
+    {
+      if ( !names.add( archive.getName() ) )
+      {
+        c_logger.log( Level.SEVERE, "Error: Timeline apis must have distinct labels: " + archive.getName() );
+        return null;
+      }
+    }
+    final File summaryFile = comparison.getOutputFile();
+    final File directory = summaryFile.getAbsoluteFile().getParentFile();
+    final String extension = comparison.getFormat().getExtension();
+    final Timeline timeline = new Timeline( summaryFile );
+    for ( int i = 1; i < archives.size(); i++ )
+    {
+      final LabeledFileArchive oldArchive = archives.get( i - 1 );
+      final LabeledFileArchive newArchive = archives.get( i );
+      final File outputFile =
+        new File( directory, toReportName( i, archives.size() - 1, oldArchive, newArchive ) + extension );
+      timeline._steps.add( new Step( comparison.createStep( oldArchive, newArchive, outputFile ) ) );
+    }
+    return timeline;
+  }
+
+  @Nonnull
+  List<Comparison> getComparisons()
+  {
+    final List<Comparison> comparisons = new ArrayList<>( _steps.size() );
+    for ( final Step step : _steps )
+    {
+      comparisons.add( step._comparison );
+    }
+    return comparisons;
+  }
+
+  /**
+   * Write the summary of the timeline. This must only be invoked after every step has completed.
+   */
+  void writeSummary()
+    throws IOException
+  {
+    final Map<String, List<String[]>> elements = new TreeMap<>();
+    for ( final Step step : _steps )
+    {
+      final String newApi = step._comparison.getNewArchives().get( 0 ).getName();
+      for ( final String element : step._added )
+      {
+        elements.computeIfAbsent( element, e -> new ArrayList<>() ).add( new String[]{ "added", newApi } );
+      }
+      for ( final String element : step._removed )
+      {
+        elements.computeIfAbsent( element, e -> new ArrayList<>() ).add( new String[]{ "removed", newApi } );
+      }
+    }
+    try ( final JsonReportWriter writer = JsonReportWriter.create( _summaryFile.toPath(), false ) )
+    {
+      writer.writeStartObject();
+      writer.writeStartArray( "steps" );
+      for ( final Step step : _steps )
+      {
+        final Comparison comparison = step._comparison;
+        writer.writeStartObject();
+        writer.write( "oldApi", comparison.getOldArchives().get( 0 ).getName() );
+        writer.write( "newApi", comparison.getNewArchives().get( 0 ).getName() );
+        writer.write( "report", comparison.getOutputFile().getName() );
+        writer.write( "differences", step._differenceCount );
+        writer.writeEnd();
+      }
+      writer.writeEnd();
+      writer.writeStartObject( "elements" );
+      for ( final Map.Entry<String, List<String[]>> entry : elements.entrySet() )
+      {
+        writer.writeStartArray( entry.getKey() );
+        for ( final String[] change : entry.getValue() )
+        {
+          writer.writeStartObject();
+          writer.write( "change", change[ 0 ] );
+          writer.write( "api", change[ 1 ] );
+          writer.writeEnd();
+        }
+        writer.writeEnd();
+      }
+      writer.writeEnd();
+      writer.writeEnd();
+    }
+  }
+
+  /**
+   * Return the name of the report of the step with the specified index. The name starts with the index, padded
+   * so that the reports sort in order, followed by the labels of the apis with any character that may not be
+   * valid in a file name replaced so that distinct labels produce distinct names in the same directory.
+   */
+  @Nonnull
+  static String toReportName( final int index,
+                              final int stepCount,
+                              @Nonnull final LabeledFileArchive oldArchive,
+                              @Nonnull final LabeledFileArchive newArchive )
+  {
+    final String prefix = String.valueOf( index );
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = String.valueOf( stepCount ).length(); i > prefix.length(); i-- )
+    {
+      sb.append( '0' );
+    }
+    return sb.append( prefix )
+      .append( '-' )
+      .append( sanitize( oldArchive.getName() ) )
+      .append( "-to-" )
+      .append( sanitize( newArchive.getName() ) )
+      .toString();
+  }
+
+  @Nonnull
+  private static String sanitize( @Nonnull final String label )
+  {
+    final StringBuilder sb = new StringBuilder( label.length() );
+    for ( int i = 0; i < label.length(); i++ )
+    {
+      final char c = label.charAt( i );
+      sb.append( ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' ) ||
+                 '.' == c || '-' == c || '_' == c ? c : '_' );
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A single comparison in the timeline along with the elements added and removed.
+   * The listener is invoked on the thread performing the comparison and the results are only read once
+   * the comparison has completed.
+   */
+  private static final class Step
+  {
+    @Nonnull
+    private final Comparison _comparison;
+    @Nonnull
+    private final List<String> _added = new ArrayList<>();
+    @Nonnull
+    private final List<String> _removed = new ArrayList<>();
+    private int _differenceCount;
+
+    Step( @Nonnull final Comparison comparison )
+    {
+      _comparison = comparison;
+      _comparison.setListener( this::accept );
+    }
+
+    private void accept( @Nonnull final DifferenceRecord record )
+    {
+      _differenceCount++;
+      final String code = record.getCode();
+      if ( ADDED_CODES.contains( code ) && null != record.getNewElement() )
+      {
+        _added.add( record.getNewElement() );
+      }
+      else if ( REMOVED_CODES.contains( code ) && null != record.getOldElement() )
+      {
+        _removed.add( record.getOldElement() );
+      }
+    }
+  }
+}
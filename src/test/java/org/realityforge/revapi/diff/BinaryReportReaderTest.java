@@ -0,0 +1,198 @@
+package org.realityforge.revapi.diff;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.annotation.Nonnull;
+import org.revapi.Report;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Writes reports using the binary format and verifies that the reader and the json converter reproduce them.
+ */
+public final class BinaryReportReaderTest
+{
+  private Path _directory;
+
+  @BeforeMethod
+  public void createDirectory()
+    throws IOException
+  {
+    _directory = Files.createTempDirectory( "binary" );
+  }
+
+  @AfterMethod
+  public void deleteDirectory()
+    throws IOException
+  {
+    TestArchives.delete( _directory );
+  }
+
+  @Test
+  public void roundTrip()
+    throws Exception
+  {
+    // Enough reports to define more strings than the initial capacity of the reader
+    final List<Report> reports = TestReports.generate( new Random( 42 ), 1000 );
+    final Path file = _directory.resolve( "report.bin" );
+    final List<DifferenceRecord> records = write( reports, ReportFormat.BINARY, file );
+
+    final BinaryReportReader reader = BinaryReportReader.open( file );
+    // The second pass reads the strings decoded by the first pass
+    for ( int pass = 0; pass < 2; pass++ )
+    {
+      final Iterator<BinaryReportReader.Record> iterator = reader.iterator();
+      for ( final DifferenceRecord expected : records )
+      {
+        assertTrue( iterator.hasNext() );
+        assertRecord( iterator.next(), expected );
+      }
+      assertFalse( iterator.hasNext() );
+    }
+  }
+
+  @Test
+  public void recordsDecodedOutOfOrder()
+    throws Exception
+  {
+    final List<Report> reports = TestReports.generate( new Random( 3 ), 100 );
+    final Path file = _directory.resolve( "report.bin" );
+    final List<DifferenceRecord> records = write( reports, ReportFormat.BINARY, file );
+
+    // Strings are decoded when first accessed, which need not be in the order they were defined
+    final List<BinaryReportReader.Record> read = new ArrayList<>();
+    BinaryReportReader.open( file ).forEach( read::add );
+    assertEquals( read.size(), records.size() );
+    for ( int i = read.size() - 1; i >= 0; i-- )
+    {
+      assertRecord( read.get( i ), records.get( i ) );
+    }
+  }
+
+  @Test
+  public void emptyReport()
+    throws Exception
+  {
+    final Path file = _directory.resolve( "report.bin" );
+    write( Collections.emptyList(), ReportFormat.BINARY, file );
+    assertFalse( BinaryReportReader.open( file ).iterator().hasNext() );
+  }
+
+  @Test
+  public void convertToJson()
+    throws Exception
+  {
+    final List<Report> reports = TestReports.generate( new Random( 11 ), 500 );
+    final Path binary = _directory.resolve( "report.bin" );
+    write( reports, ReportFormat.BINARY, binary );
+    final Path json = _directory.resolve( "report.json" );
+    write( reports, ReportFormat.JSON, json );
+
+    final Path converted = _directory.resolve( "converted.json" );
+    BinaryReportReader.convertToJson( binary, converted );
+    assertEquals( Files.readAllBytes( converted ), Files.readAllBytes( json ) );
+  }
+
+  @Test
+  public void rejectsOtherFiles()
+    throws Exception
+  {
+    final Path json = _directory.resolve( "report.json" );
+    write( TestReports.generate( new Random( 5 ), 10 ), ReportFormat.JSON, json );
+    expectThrows( IOException.class, () -> BinaryReportReader.open( json ) );
+
+    final Path future = _directory.resolve( "future.bin" );
+    try ( final OutputStream output = Files.newOutputStream( future );
+          final DataOutputStream dataOutput = new DataOutputStream( output ) )
+    {
+      dataOutput.writeInt( BinaryReportWriter.MAGIC );
+      dataOutput.writeInt( BinaryReportWriter.VERSION + 1 );
+    }
+    expectThrows( IOException.class, () -> BinaryReportReader.open( future ) );
+  }
+
+  @Test
+  public void truncatedReport()
+    throws Exception
+  {
+    final Path file = _directory.resolve( "report.bin" );
+    write( TestReports.generate( new Random( 9 ), 10 ), ReportFormat.BINARY, file );
+    final byte[] data = Files.readAllBytes( file );
+    Files.write( file, Arrays.copyOf( data, data.length - 3 ) );
+
+    final Iterator<BinaryReportReader.Record> iterator = BinaryReportReader.open( file ).iterator();
+    expectThrows( IllegalStateException.class, () -> {
+      while ( iterator.hasNext() )
+      {
+        iterator.next();
+      }
+    } );
+  }
+
+  /**
+   * Write the reports in the format and return the records in the order they were written.
+   */
+  @Nonnull
+  private static List<DifferenceRecord> write( @Nonnull final List<Report> reports,
+                                               @Nonnull final ReportFormat format,
+                                               @Nonnull final Path file )
+    throws IOException
+  {
+    final List<DifferenceRecord> records = new ArrayList<>();
+    try ( final SpillingCollector collector = new SpillingCollector( Integer.MAX_VALUE, Long.MAX_VALUE );
+          final ReportWriter writer = ReportWriter.create( format, file ) )
+    {
+      for ( final Report report : reports )
+      {
+        collector.add( report, report.getDifferences() );
+      }
+      collector.finish();
+      writer.writeStart();
+      collector.forEach( record -> {
+        writer.writeDifference( record.getCode(),
+                                record.getDescription(),
+                                record.getNewElement(),
+                                record.getOldElement(),
+                                record.getClassification(),
+                                record.getAttachments() );
+        records.add( record );
+      } );
+      writer.writeEnd();
+    }
+    return records;
+  }
+
+  private static void assertRecord( @Nonnull final BinaryReportReader.Record actual,
+                                    @Nonnull final DifferenceRecord expected )
+  {
+    assertEquals( actual.getCode(), expected.getCode() );
+    assertEquals( actual.getDescription(), expected.getDescription() );
+    assertEquals( actual.getNewElement(), expected.getNewElement() );
+    assertEquals( actual.getOldElement(), expected.getOldElement() );
+    assertEntries( actual.getClassification(), expected.getClassification() );
+    assertEntries( actual.getAttachments(), expected.getAttachments() );
+  }
+
+  private static void assertEntries( @Nonnull final Map<String, String> actual, @Nonnull final String[] expected )
+  {
+    final List<String> entries = new ArrayList<>();
+    for ( final Map.Entry<String, String> entry : actual.entrySet() )
+    {
+      entries.add( entry.getKey() );
+      entries.add( entry.getValue() );
+    }
+    assertEquals( entries, Arrays.asList( expected ) );
+  }
+}
@@ -0,0 +1,206 @@
+package org.realityforge.revapi.diff;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nonnull;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Starts the daemon in-process and performs comparisons on behalf of concurrent clients.
+ */
+public final class DaemonTest
+{
+  private static final int IDLE_TIMEOUT = 2000;
+  private static final int REQUEST_TIMEOUT = 500;
+  private Path _directory;
+  private Path _tokenFile;
+  private int _port;
+  private Thread _daemonThread;
+  private final List<Throwable> _daemonErrors = new ArrayList<>();
+
+  @BeforeClass
+  public void startDaemon()
+    throws Exception
+  {
+    _directory = Files.createTempDirectory( "daemon" );
+    final Map<String, String> oldSources = new HashMap<>();
+    oldSources.put( "a.A", "package a; public class A { public void m1() {} }" );
+    TestArchives.createJar( _directory.resolve( "old.jar" ), oldSources );
+    final Map<String, String> newSources = new HashMap<>();
+    newSources.put( "a.A", "package a; public class A { public void m2() {} }" );
+    TestArchives.createJar( _directory.resolve( "new.jar" ), newSources );
+
+    Main.setupRevapi();
+    _tokenFile = _directory.resolve( "token" );
+    try ( final ServerSocket socket = new ServerSocket( 0, 50, InetAddress.getLoopbackAddress() ) )
+    {
+      _port = socket.getLocalPort();
+    }
+    final Daemon daemon = new Daemon( _port, IDLE_TIMEOUT, REQUEST_TIMEOUT, 4, _tokenFile, Main::handleRequest );
+    _daemonThread = new Thread( () -> {
+      try
+      {
+        daemon.run();
+      }
+      catch ( final Throwable t )
+      {
+        _daemonErrors.add( t );
+      }
+    } );
+    _daemonThread.start();
+    final long start = System.currentTimeMillis();
+    while ( !Files.exists( _tokenFile ) || 0 == Files.size( _tokenFile ) )
+    {
+      assertTrue( _daemonThread.isAlive(), "Daemon failed to start: " + _daemonErrors );
+      assertTrue( System.currentTimeMillis() - start < 10000, "Daemon did not start" );
+      Thread.sleep( 10 );
+    }
+  }
+
+  @AfterClass
+  public void stopDaemon()
+    throws Exception
+  {
+    // The daemon shuts down once it is idle
+    _daemonThread.join( 30000 );
+    assertFalse( _daemonThread.isAlive() );
+    assertTrue( _daemonErrors.isEmpty(), _daemonErrors.toString() );
+    assertFalse( Files.exists( _tokenFile ) );
+    TestArchives.delete( _directory );
+  }
+
+  @Test
+  public void tokenFileIsOnlyAccessibleByOwner()
+    throws Exception
+  {
+    if ( _tokenFile.getFileSystem().supportedFileAttributeViews().contains( "posix" ) )
+    {
+      assertEquals( PosixFilePermissions.toString( Files.getPosixFilePermissions( _tokenFile ) ), "rw-------" );
+    }
+  }
+
+  @Test
+  public void concurrentRequests()
+    throws Exception
+  {
+    final int count = 4;
+    final ExecutorService executor = Executors.newFixedThreadPool( count );
+    try
+    {
+      final List<Future<JsonObject>> responses = new ArrayList<>();
+      for ( int i = 0; i < count; i++ )
+      {
+        final String[] args =
+          0 == i ?
+          new String[]{ "--old-api", "old.jar", "--new-api", "new.jar", "--output-file", "report0.json", "--expect-no-differences" } :
+          new String[]{ "--old-api", "old.jar", "--new-api", "new.jar", "--output-file", "report" + i + ".json" };
+        responses.add( executor.submit( () -> Daemon.send( _port, _tokenFile, createRequest( args ) ) ) );
+      }
+      for ( int i = 0; i < count; i++ )
+      {
+        final JsonObject response = responses.get( i ).get();
+        assertNull( Daemon.getError( response ) );
+        assertEquals( response.getInt( "exitCode" ), 0 == i ? 1 : 0 );
+        assertEquals( response.getInt( "differenceCount" ), 2 );
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+    final String report = readReport( "report0.json" );
+    assertTrue( report.contains( "java.method.added" ) );
+    assertTrue( report.contains( "java.method.removed" ) );
+    for ( int i = 1; i < count; i++ )
+    {
+      assertEquals( readReport( "report" + i + ".json" ), report );
+    }
+  }
+
+  @Test
+  public void rejectsOptionsThatConfigureTheDaemon()
+    throws Exception
+  {
+    for ( final String option : new String[]{ "--streaming", "--no-cache", "--partition-by-package=2", "--max-heap-budget=1m" } )
+    {
+      final JsonObject response =
+        Daemon.send( _port,
+                     _tokenFile,
+                     createRequest( "--old-api", "old.jar", "--new-api", "new.jar", "--output-file", "rejected.json", option ) );
+      final String error = Daemon.getError( response );
+      assertNotNull( error );
+      assertTrue( error.contains( option.replaceAll( "=.*", "" ) ), error );
+      assertEquals( response.getInt( "exitCode" ), 2 );
+      assertFalse( Files.exists( _directory.resolve( "rejected.json" ) ) );
+    }
+  }
+
+  @Test
+  public void rejectsRequestWithoutToken()
+    throws Exception
+  {
+    final Path otherTokenFile = _directory.resolve( "other-token" );
+    Files.write( otherTokenFile, "0123".getBytes( StandardCharsets.UTF_8 ) );
+    final JsonObject response =
+      Daemon.send( _port,
+                   otherTokenFile,
+                   createRequest( "--old-api", "old.jar", "--new-api", "new.jar", "--output-file", "forged.json" ) );
+    assertNotNull( Daemon.getError( response ) );
+    assertFalse( response.containsKey( "exitCode" ) );
+    assertFalse( Files.exists( _directory.resolve( "forged.json" ) ) );
+  }
+
+  @Test
+  public void disconnectsClientThatDoesNotSendRequest()
+    throws Exception
+  {
+    try ( final Socket socket = new Socket( InetAddress.getLoopbackAddress(), _port ) )
+    {
+      socket.setSoTimeout( 10000 );
+      final long start = System.currentTimeMillis();
+      final InputStream input = socket.getInputStream();
+      assertEquals( input.read(), -1 );
+      assertTrue( System.currentTimeMillis() - start < 10000 );
+    }
+  }
+
+  @Nonnull
+  private JsonObject createRequest( @Nonnull final String... args )
+  {
+    final JsonArrayBuilder arguments = Json.createArrayBuilder();
+    for ( final String arg : args )
+    {
+      arguments.add( arg );
+    }
+    return Json.createObjectBuilder()
+      .add( "directory", _directory.toString() )
+      .add( "args", arguments )
+      .build();
+  }
+
+  @Nonnull
+  private String readReport( @Nonnull final String name )
+    throws Exception
+  {
+    return new String( Files.readAllBytes( _directory.resolve( name ) ), StandardCharsets.UTF_8 );
+  }
+}
@@ -0,0 +1,101 @@
+package org.realityforge.revapi.diff;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.jboss.dmr.ModelNode;
+import org.revapi.AnalysisContext;
+import org.revapi.Element;
+import org.revapi.simple.SimpleElementFilter;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Verifies that extensions registered on the classpath are only used alongside the extensions of the tool
+ * when their discovery is requested.
+ */
+public final class ExtensionsTest
+{
+  /**
+   * A filter registered as a service by the tests that excludes the elements whose names contain the
+   * configured text. The filter excludes nothing unless it is configured.
+   */
+  public static final class ExcludeFilter
+    extends SimpleElementFilter
+  {
+    @Nullable
+    private String _exclude;
+
+    @Nonnull
+    @Override
+    public String getExtensionId()
+    {
+      return "revapi-diff.test.exclude";
+    }
+
+    @Override
+    public void initialize( @Nonnull final AnalysisContext analysisContext )
+    {
+      final ModelNode exclude = analysisContext.getConfiguration().get( "exclude" );
+      _exclude = exclude.isDefined() ? exclude.asString() : null;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    @Override
+    public boolean applies( @Nullable final Element element )
+    {
+      return null == element || null == _exclude || !element.getFullHumanReadableString().contains( _exclude );
+    }
+  }
+
+  @Test
+  public void discoveredExtension()
+    throws Exception
+  {
+    final Path directory = Files.createTempDirectory( "extensions" );
+    try
+    {
+      final Map<String, String> oldSources = new HashMap<>();
+      oldSources.put( "a.Kept", "package a; public class Kept { public void m1() {} }" );
+      oldSources.put( "a.Excluded", "package a; public class Excluded { public void m1() {} }" );
+      final Map<String, String> newSources = new HashMap<>();
+      newSources.put( "a.Kept", "package a; public class Kept { public void m2() {} }" );
+      newSources.put( "a.Excluded", "package a; public class Excluded { public void m2() {} }" );
+      final Path oldApi = TestArchives.createJar( directory.resolve( "old.jar" ), oldSources );
+      final Path newApi = TestArchives.createJar( directory.resolve( "new.jar" ), newSources );
+
+      final Path unfiltered = directory.resolve( "unfiltered.json" );
+      TestMain.compare( oldApi, newApi, unfiltered );
+      final String unfilteredReport = new String( Files.readAllBytes( unfiltered ), StandardCharsets.UTF_8 );
+      assertTrue( unfilteredReport.contains( "a.Kept" ), unfilteredReport );
+      assertTrue( unfilteredReport.contains( "a.Excluded" ), unfilteredReport );
+
+      final Path config = directory.resolve( "config.json" );
+      final String configuration =
+        "[{\"extension\":\"revapi-diff.test.exclude\",\"configuration\":{\"exclude\":\"a.Excluded\"}}]";
+      Files.write( config, configuration.getBytes( StandardCharsets.UTF_8 ) );
+      final Path undiscovered = directory.resolve( "undiscovered.json" );
+      TestMain.compare( oldApi, newApi, undiscovered, "--config-file", config.toString() );
+      final String undiscoveredReport = new String( Files.readAllBytes( undiscovered ), StandardCharsets.UTF_8 );
+      assertTrue( undiscoveredReport.contains( "a.Excluded" ), undiscoveredReport );
+
+      final Path filtered = directory.resolve( "filtered.json" );
+      TestMain.compare( oldApi, newApi, filtered, "--config-file", config.toString(), "--discover-extensions" );
+      final String filteredReport = new String( Files.readAllBytes( filtered ), StandardCharsets.UTF_8 );
+      assertTrue( filteredReport.contains( "a.Kept" ), filteredReport );
+      assertFalse( filteredReport.contains( "a.Excluded" ), filteredReport );
+    }
+    finally
+    {
+      TestArchives.delete( directory );
+    }
+  }
+}
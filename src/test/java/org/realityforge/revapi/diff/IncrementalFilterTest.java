@@ -0,0 +1,133 @@
+package org.realityforge.revapi.diff;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Verifies that the incremental analysis produces the same report as the full analysis.
+ */
+public final class IncrementalFilterTest
+{
+  /**
+   * A configuration that excludes the differences reported for unchanged classes.
+   */
+  private static final String CONFIG =
+    "[{\"extension\":\"revapi.java\",\"configuration\":{" +
+    "\"missing-classes\":{\"behavior\":\"ignore\",\"ignoreMissingAnnotations\":true}," +
+    "\"checks\":{\"nonPublicPartOfAPI\":{\"reportUnchanged\":false}}}}]";
+  private Path _directory;
+  private Path _config;
+
+  @BeforeClass
+  public void createDirectory()
+    throws Exception
+  {
+    _directory = Files.createTempDirectory( "incremental" );
+    _config = _directory.resolve( "config.json" );
+    Files.write( _config, CONFIG.getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  @AfterClass
+  public void deleteDirectory()
+    throws Exception
+  {
+    TestArchives.delete( _directory );
+  }
+
+  @Test
+  public void unchangedClassPartOfApi()
+    throws Exception
+  {
+    final Map<String, String> oldSources = createSources();
+    oldSources.put( "a.Api", "package a; public class Api { public Hidden get() { return null; } }" );
+    oldSources.put( "a.Hidden", "package a; class Hidden {}" );
+    oldSources.put( "a.B", "package a; public class B { public void m1() {} }" );
+    final Map<String, String> newSources = createSources();
+    newSources.put( "a.Api", "package a; public class Api { public Hidden get() { return null; } }" );
+    newSources.put( "a.Hidden", "package a; class Hidden {}" );
+    newSources.put( "a.B", "package a; public class B { public void m2() {} }" );
+
+    final String report = assertSameReport( "hidden", oldSources, newSources, false );
+    assertTrue( report.contains( "java.class.nonPublicPartOfAPI" ), report );
+  }
+
+  @Test
+  public void topLevelClassWithDollarInName()
+    throws Exception
+  {
+    final Map<String, String> oldSources = createSources();
+    oldSources.put( "a.Gen", "package a; public class Gen {}" );
+    oldSources.put( "a.Gen$Factory", "package a; public class Gen$Factory { public void m1() {} }" );
+    final Map<String, String> newSources = createSources();
+    newSources.put( "a.Gen", "package a; public class Gen {}" );
+    newSources.put( "a.Gen$Factory", "package a; public class Gen$Factory { public void m2() {} }" );
+
+    final String report = assertSameReport( "dollar", oldSources, newSources, true, "--config-file", _config.toString() );
+    assertTrue( report.contains( "java.method.removed" ), report );
+    assertTrue( report.contains( "java.method.added" ), report );
+  }
+
+  @Test
+  public void nestedClass()
+    throws Exception
+  {
+    final Map<String, String> oldSources = createSources();
+    oldSources.put( "a.Outer",
+                    "package a; public class Outer { public static class Inner { public void m1() {} } }" );
+    final Map<String, String> newSources = createSources();
+    newSources.put( "a.Outer",
+                    "package a; public class Outer { public static class Inner { public void m2() {} } }" );
+
+    final String report = assertSameReport( "nested", oldSources, newSources, true, "--config-file", _config.toString() );
+    assertTrue( report.contains( "java.method.removed" ), report );
+  }
+
+  /**
+   * Return sources for unchanged classes so that the changed classes are a small part of the api.
+   */
+  private Map<String, String> createSources()
+  {
+    final Map<String, String> sources = new HashMap<>();
+    for ( int i = 0; i < 10; i++ )
+    {
+      sources.put( "a.F" + i, "package a; public class F" + i + " { public void m() {} }" );
+    }
+    return sources;
+  }
+
+  /**
+   * Assert that the incremental and full analyses of the sources produce the same report and return the report.
+   *
+   * @param restricted true if the incremental analysis is expected to restrict the classes analyzed.
+   */
+  private String assertSameReport( final String name,
+                                   final Map<String, String> oldSources,
+                                   final Map<String, String> newSources,
+                                   final boolean restricted,
+                                   final String... args )
+    throws Exception
+  {
+    final Path oldApi = TestArchives.createJar( _directory.resolve( name + "-old.jar" ), oldSources );
+    final Path newApi = TestArchives.createJar( _directory.resolve( name + "-new.jar" ), newSources );
+    final Path fullReport = _directory.resolve( name + "-full.json" );
+    final Path incrementalReport = _directory.resolve( name + "-incremental.json" );
+    TestMain.compare( oldApi, newApi, fullReport, args );
+    final String[] incrementalArgs = new String[ args.length + 2 ];
+    System.arraycopy( args, 0, incrementalArgs, 0, args.length );
+    incrementalArgs[ args.length ] = "--incremental";
+    incrementalArgs[ args.length + 1 ] = "--verbose";
+    final String output = TestMain.compare( oldApi, newApi, incrementalReport, incrementalArgs );
+    assertEquals( !output.contains( "Performing full analysis" ), restricted, output );
+
+    final String report = new String( Files.readAllBytes( fullReport ), StandardCharsets.UTF_8 );
+    assertEquals( new String( Files.readAllBytes( incrementalReport ), StandardCharsets.UTF_8 ), report );
+    return report;
+  }
+}
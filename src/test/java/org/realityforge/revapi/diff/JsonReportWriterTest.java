@@ -0,0 +1,215 @@
+package org.realityforge.revapi.diff;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import org.revapi.CompatibilityType;
+import org.revapi.Difference;
+import org.revapi.Element;
+import org.revapi.Report;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Verifies that the json report is byte-identical to the report produced by the original writer, which
+ * wrote the report using a pretty-printing JsonGenerator and then re-indented it using regular expressions.
+ */
+public final class JsonReportWriterTest
+{
+  @Test
+  public void emptyReport()
+    throws Exception
+  {
+    assertMatchesBaseline( Collections.emptyList(), false );
+  }
+
+  @Test
+  public void report()
+    throws Exception
+  {
+    assertMatchesBaseline( TestReports.generate( new Random( 42 ), 200 ), false );
+  }
+
+  @Test
+  public void shardedReport()
+    throws Exception
+  {
+    // Large enough that the differences span several shards
+    assertMatchesBaseline( TestReports.generate( new Random( 7 ), 2000 ), true );
+  }
+
+  private static void assertMatchesBaseline( @Nonnull final List<Report> reports, final boolean sharded )
+    throws IOException
+  {
+    final Path file = Files.createTempFile( "report", ".json" );
+    try
+    {
+      write( reports, file, sharded );
+      assertEquals( new String( Files.readAllBytes( file ), StandardCharsets.UTF_8 ), writeBaseline( reports ) );
+    }
+    finally
+    {
+      Files.delete( file );
+    }
+  }
+
+  private static void write( @Nonnull final List<Report> reports, @Nonnull final Path file, final boolean sharded )
+    throws IOException
+  {
+    try ( final SpillingCollector collector = new SpillingCollector( Integer.MAX_VALUE, Long.MAX_VALUE );
+          final ReportWriter writer = ReportWriter.create( ReportFormat.JSON, file ) )
+    {
+      for ( final Report report : reports )
+      {
+        collector.add( report, report.getDifferences() );
+      }
+      collector.finish();
+      writer.writeStart();
+      final ReportWriter.ShardEncoder encoder = writer.getShardEncoder();
+      assertNotNull( encoder );
+      final ShardedReportEmitter emitter = sharded ? new ShardedReportEmitter( encoder, new PhaseStats() ) : null;
+      collector.forEach( record -> {
+        if ( null != emitter )
+        {
+          emitter.add( record );
+        }
+        else
+        {
+          writer.writeDifference( record.getCode(),
+                                  record.getDescription(),
+                                  record.getNewElement(),
+                                  record.getOldElement(),
+                                  record.getClassification(),
+                                  record.getAttachments() );
+        }
+      } );
+      if ( null != emitter )
+      {
+        emitter.finish();
+      }
+      writer.writeEnd();
+    }
+  }
+
+  /**
+   * Write the report as the original writer did.
+   */
+  @Nonnull
+  private static String writeBaseline( @Nonnull final List<Report> reports )
+  {
+    final StringWriter output = new StringWriter();
+    final Map<String, Object> config = new HashMap<>();
+    config.put( JsonGenerator.PRETTY_PRINTING, true );
+    final JsonGenerator g = Json.createGeneratorFactory( config ).createGenerator( output );
+    g.writeStartArray();
+    final List<Report> sorted =
+      reports
+        .stream()
+        .sorted( Comparator.comparing( r -> r.getNewElement() + "-" + r.getOldElement() ) )
+        .collect( Collectors.toList() );
+    for ( final Report report : sorted )
+    {
+      final List<Difference> differences =
+        report.getDifferences()
+          .stream()
+          .sorted( Comparator.comparing( JsonReportWriterTest::toBaselineDescriptor ) )
+          .collect( Collectors.toList() );
+      for ( final Difference difference : differences )
+      {
+        writeBaselineDifference( g, report, difference );
+      }
+    }
+    g.writeEnd();
+    g.close();
+    return output.toString()
+             .replaceAll( "(?m)^ {4}\\{", "  {" )
+             .replaceAll( "(?m)^ {4}}", "  }" )
+             .replaceAll( "(?m)^ {8}\"", "    \"" )
+             .replaceAll( "(?m)^ {8}}", "    }" )
+             .replaceAll( "(?m)^ {12}\"", "      \"" )
+             .replaceAll( "(?m)^\n\\[\n", "[\n" ) +
+           "\n";
+  }
+
+  @Nonnull
+  private static String toBaselineDescriptor( @Nonnull final Difference d )
+  {
+    return d.code + "-" +
+           sortKeys( d.classification )
+             .stream()
+             .map( k -> k + "=" + d.classification.get( k ) )
+             .collect( Collectors.joining( "," ) ) +
+           "-" +
+           sortKeys( d.attachments )
+             .stream()
+             .map( k -> k + "=" + d.attachments.get( k ) )
+             .collect( Collectors.joining( "," ) );
+  }
+
+  private static void writeBaselineDifference( @Nonnull final JsonGenerator g,
+                                               @Nonnull final Report report,
+                                               @Nonnull final Difference difference )
+  {
+    g.writeStartObject();
+    g.write( "code", difference.code );
+    g.write( "description", difference.description );
+    final Element newElement = report.getNewElement();
+    final Element oldElement = report.getOldElement();
+    if ( null != oldElement &&
+         null != newElement &&
+         newElement.getFullHumanReadableString().equals( oldElement.getFullHumanReadableString() ) )
+    {
+      g.write( "element", newElement.getFullHumanReadableString() );
+    }
+    else
+    {
+      if ( null != newElement )
+      {
+        g.write( "newElement", newElement.getFullHumanReadableString() );
+      }
+      if ( null != oldElement )
+      {
+        g.write( "oldElement", oldElement.getFullHumanReadableString() );
+      }
+    }
+    g.writeStartObject( "classification" );
+    for ( final CompatibilityType key : sortKeys( difference.classification ) )
+    {
+      g.write( key.name(), difference.classification.get( key ).name() );
+    }
+    g.writeEnd();
+
+    g.writeStartObject( "attachments" );
+    for ( final String key : sortKeys( difference.attachments ) )
+    {
+      if ( !Main.ATTACHMENT_EXCLUDES.contains( key ) )
+      {
+        g.write( key, difference.attachments.get( key ) );
+      }
+    }
+    g.writeEnd();
+
+    g.writeEnd();
+  }
+
+  @Nonnull
+  private static <K extends Comparable<K>, V> List<K> sortKeys( @Nonnull final Map<K, V> map )
+  {
+    final List<K> keys = new ArrayList<>( map.keySet() );
+    Collections.sort( keys );
+    return keys;
+  }
+}
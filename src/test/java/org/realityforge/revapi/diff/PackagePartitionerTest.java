@@ -0,0 +1,121 @@
+package org.realityforge.revapi.diff;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Verifies that analyzing the classes of the apis in partitions produces the same report as the unpartitioned
+ * analysis.
+ */
+public final class PackagePartitionerTest
+{
+  private Path _directory;
+
+  @BeforeClass
+  public void createDirectory()
+    throws Exception
+  {
+    _directory = Files.createTempDirectory( "partition" );
+  }
+
+  @AfterClass
+  public void deleteDirectory()
+    throws Exception
+  {
+    TestArchives.delete( _directory );
+  }
+
+  @Test
+  public void partitionedAnalysis()
+    throws Exception
+  {
+    final Map<String, String> oldSources = new HashMap<>();
+    final Map<String, String> newSources = new HashMap<>();
+    for ( final String packageName : new String[]{ "a", "b", "c", "d", "e" } )
+    {
+      for ( int i = 0; i < 5; i++ )
+      {
+        final String name = packageName + ".C" + i;
+        oldSources.put( name, "package " + packageName + "; public class C" + i + " { public int m1() { return 0; } }" );
+        newSources.put( name, "package " + packageName + "; public class C" + i + " { public long m1() { return 0; } " +
+                              "public void m2() {} }" );
+      }
+    }
+    // A top-level class with a '$' in its name is analyzed in the partition of its package
+    oldSources.put( "a.Gen", "package a; public class Gen {}" );
+    oldSources.put( "a.Gen$Factory", "package a; public class Gen$Factory { public void m1() {} }" );
+    newSources.put( "a.Gen", "package a; public class Gen {}" );
+    newSources.put( "a.Gen$Factory", "package a; public class Gen$Factory { public void m2() {} }" );
+    // A non-public class exposed by the api of the same package
+    oldSources.put( "b.Hidden", "package b; class Hidden {}" );
+    oldSources.put( "b.Api", "package b; public class Api { public Hidden get() { return null; } }" );
+    newSources.put( "b.Hidden", "package b; class Hidden {}" );
+    newSources.put( "b.Api", "package b; public class Api { public Hidden get() { return null; } }" );
+    newSources.put( "c.Use", "package c; public class Use { public b.Api api() { return null; } }" );
+    // A non-public class exposed by the api of another package through an inherited method. The inherited
+    // method is reported as a member of the subclass so the subclass is analyzed with its superclass
+    oldSources.put( "b.Secret", "package b; class Secret {}" );
+    oldSources.put( "b.Base", "package b; public class Base { public Secret secret() { return null; } }" );
+    oldSources.put( "e.Sub", "package e; public class Sub {}" );
+    newSources.put( "b.Secret", "package b; class Secret {}" );
+    newSources.put( "b.Base", "package b; public class Base { public Secret secret() { return null; } }" );
+    newSources.put( "e.Sub", "package e; public class Sub extends b.Base {}" );
+    // Classes removed from and added to the apis
+    oldSources.put( "d.Removed", "package d; public class Removed {}" );
+    newSources.put( "f.Added", "package f; public class Added {}" );
+
+    final Path oldApi = TestArchives.createJar( _directory.resolve( "old.jar" ), oldSources );
+    final Path newApi = TestArchives.createJar( _directory.resolve( "new.jar" ), newSources );
+    final Path expected = _directory.resolve( "expected.json" );
+    TestMain.compare( oldApi, newApi, expected );
+    final String report = new String( Files.readAllBytes( expected ), StandardCharsets.UTF_8 );
+    assertTrue( report.contains( "java.class.nonPublicPartOfAPI" ), report );
+    assertTrue( report.contains( "Gen$Factory" ), report );
+    assertEquals( report.split( "\"element\": \"class b.Secret\"", -1 ).length, 2, report );
+    assertTrue( report.contains( "\"element\": \"class e.Sub\"" ), report );
+
+    for ( final int partitionCount : new int[]{ 2, 3, 16 } )
+    {
+      final Path actual = _directory.resolve( "partitioned-" + partitionCount + ".json" );
+      TestMain.compare( oldApi, newApi, actual, "--partition-by-package", String.valueOf( partitionCount ) );
+      assertEquals( new String( Files.readAllBytes( actual ), StandardCharsets.UTF_8 ), report, "Partitions: " + partitionCount );
+    }
+  }
+
+  @Test
+  public void partitionedCheck()
+    throws Exception
+  {
+    final Map<String, String> oldSources = new HashMap<>();
+    final Map<String, String> newSources = new HashMap<>();
+    for ( final String packageName : new String[]{ "a", "b", "c", "d" } )
+    {
+      for ( int i = 0; i < 5; i++ )
+      {
+        final String source = "package " + packageName + "; public class C" + i + " { public void m1() {} }";
+        oldSources.put( packageName + ".C" + i, source );
+        newSources.put( packageName + ".C" + i, source );
+      }
+    }
+    newSources.put( "d.C4", "package d; public class C4 { public void m2() {} }" );
+
+    final Path oldApi = TestArchives.createJar( _directory.resolve( "check-old.jar" ), oldSources );
+    final Path newApi = TestArchives.createJar( _directory.resolve( "check-new.jar" ), newSources );
+    final Path output = _directory.resolve( "check.json" );
+    // The partition that finds the difference stops the check and cancels the other partitions
+    TestMain.run( 1,
+                  "--old-api", oldApi.toString(),
+                  "--new-api", newApi.toString(),
+                  "--output-file", output.toString(),
+                  "--partition-by-package", "4",
+                  "--check" );
+    assertFalse( Files.exists( output ) );
+  }
+}
@@ -0,0 +1,100 @@
+package org.realityforge.revapi.diff;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public final class ResultCacheTest
+{
+  private static final String KEY = "0123456789abcdef";
+  private static final byte[] REPORT = "[\n  {\n    \"code\": \"java.class.added\"\n  }\n]\n".getBytes( StandardCharsets.UTF_8 );
+  private Path _directory;
+  private ResultCache _cache;
+  private File _reportFile;
+  private File _outputFile;
+
+  @BeforeMethod
+  public void setUp()
+    throws Exception
+  {
+    _directory = Files.createTempDirectory( "cache" );
+    _cache = new ResultCache( _directory.resolve( "cache" ), Long.MAX_VALUE, "1.0" );
+    _reportFile = _directory.resolve( "report.json" ).toFile();
+    _outputFile = _directory.resolve( "output.json" ).toFile();
+    Files.write( _reportFile.toPath(), REPORT );
+  }
+
+  @AfterMethod
+  public void tearDown()
+    throws Exception
+  {
+    try ( final Stream<Path> files = Files.walk( _directory ) )
+    {
+      files.sorted( Comparator.reverseOrder() ).forEach( f -> f.toFile().delete() );
+    }
+  }
+
+  @Test
+  public void restoreStoredReport()
+    throws Exception
+  {
+    assertEquals( _cache.restore( KEY, _outputFile ), -1 );
+    _cache.store( KEY, _reportFile, 1 );
+    assertEquals( _cache.restore( KEY, _outputFile ), 1 );
+    assertEquals( Files.readAllBytes( _outputFile.toPath() ), REPORT );
+  }
+
+  @Test
+  public void truncatedEntryIsDiscarded()
+    throws Exception
+  {
+    _cache.store( KEY, _reportFile, 1 );
+    final Path entry = getEntry();
+    final byte[] data = Files.readAllBytes( entry );
+    for ( final int length : new int[]{ 0, 3, 10, data.length - 1 } )
+    {
+      Files.write( entry, Arrays.copyOf( data, length ) );
+      assertEquals( _cache.restore( KEY, _outputFile ), -1 );
+      assertFalse( Files.exists( entry ) );
+    }
+  }
+
+  @Test
+  public void corruptEntryIsDiscarded()
+    throws Exception
+  {
+    _cache.store( KEY, _reportFile, 1 );
+    final Path entry = getEntry();
+    final byte[] data = Files.readAllBytes( entry );
+    data[ data.length - 8 ] ^= 1;
+    Files.write( entry, data );
+    assertEquals( _cache.restore( KEY, _outputFile ), -1 );
+    assertFalse( Files.exists( entry ) );
+
+    // The comparison is then analyzed and the entry replaced
+    _cache.store( KEY, _reportFile, 1 );
+    assertEquals( _cache.restore( KEY, _outputFile ), 1 );
+    assertEquals( Files.readAllBytes( _outputFile.toPath() ), REPORT );
+  }
+
+  @Nonnull
+  private Path getEntry()
+    throws Exception
+  {
+    try ( final Stream<Path> files = Files.list( _directory.resolve( "cache" ) ) )
+    {
+      final Path[] entries = files.toArray( Path[]::new );
+      assertEquals( entries.length, 1 );
+      return entries[ 0 ];
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package org.realityforge.revapi.diff;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import org.revapi.Report;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Verifies that spilling records to disk and merging them produces the same records in the same order as
+ * collecting every record in memory.
+ */
+public final class SpillingCollectorTest
+{
+  @Test
+  public void tinyHeapBudget()
+    throws Exception
+  {
+    final List<Report> reports = TestReports.generate( new Random( 42 ), 2000 );
+    final List<String> expected = collect( reports, Integer.MAX_VALUE, Long.MAX_VALUE );
+    final long runCount = countRuns();
+    // A budget of a single byte spills after every report, producing more runs than are merged at once
+    try ( final SpillingCollector collector = new SpillingCollector( Integer.MAX_VALUE, 1 ) )
+    {
+      add( collector, reports );
+      collector.finish();
+      assertTrue( countRuns() > runCount, "Expected the collector to spill" );
+      assertEquals( toList( collector ), expected );
+    }
+    assertEquals( countRuns(), runCount );
+  }
+
+  @Test
+  public void smallBuffer()
+    throws Exception
+  {
+    final List<Report> reports = TestReports.generate( new Random( 7 ), 500 );
+    assertEquals( collect( reports, 7, Long.MAX_VALUE ), collect( reports, Integer.MAX_VALUE, Long.MAX_VALUE ) );
+  }
+
+  @Test
+  public void reportsWithIdenticalKeys()
+    throws Exception
+  {
+    // Reports of elements that render identically have identical keys, and concurrent analyses may add them in any order
+    final List<Report> reports = new ArrayList<>();
+    for ( final Report report : TestReports.generate( new Random( 13 ), 50 ) )
+    {
+      reports.add( new Report( report.getDifferences(), new TestElement( "class a.Same" ), null ) );
+    }
+    final List<String> expected = collect( reports, Integer.MAX_VALUE, Long.MAX_VALUE );
+    final Random random = new Random( 17 );
+    for ( int i = 0; i < 5; i++ )
+    {
+      Collections.shuffle( reports, random );
+      assertEquals( collect( reports, Integer.MAX_VALUE, Long.MAX_VALUE ), expected );
+      assertEquals( collect( reports, 7, 1 ), expected );
+    }
+  }
+
+  @Test
+  public void analysisWithTinyHeapBudget()
+    throws Exception
+  {
+    final Path directory = Files.createTempDirectory( "spill" );
+    try
+    {
+      final Map<String, String> oldSources = new HashMap<>();
+      final Map<String, String> newSources = new HashMap<>();
+      for ( int i = 0; i < 20; i++ )
+      {
+        oldSources.put( "a.C" + i, "package a; public class C" + i + " { public int m1() { return 0; } }" );
+        newSources.put( "a.C" + i, "package a; public class C" + i + " { public long m1() { return 0; } " +
+                                   "public void m2() {} }" );
+      }
+      final Path oldApi = TestArchives.createJar( directory.resolve( "old.jar" ), oldSources );
+      final Path newApi = TestArchives.createJar( directory.resolve( "new.jar" ), newSources );
+      final Path expected = directory.resolve( "expected.json" );
+      TestMain.compare( oldApi, newApi, expected );
+      final Path actual = directory.resolve( "actual.json" );
+      TestMain.compare( oldApi, newApi, actual, "--max-heap-budget", "1" );
+      assertEquals( Files.readAllBytes( actual ), Files.readAllBytes( expected ) );
+      final Path streamed = directory.resolve( "streamed.json" );
+      TestMain.compare( oldApi, newApi, streamed, "--streaming", "--buffer-size", "1" );
+      assertEquals( Files.readAllBytes( streamed ), Files.readAllBytes( expected ) );
+    }
+    finally
+    {
+      TestArchives.delete( directory );
+    }
+  }
+
+  @Nonnull
+  private static List<String> collect( @Nonnull final List<Report> reports, final int bufferSize, final long byteBudget )
+    throws IOException
+  {
+    try ( final SpillingCollector collector = new SpillingCollector( bufferSize, byteBudget ) )
+    {
+      add( collector, reports );
+      collector.finish();
+      return toList( collector );
+    }
+  }
+
+  private static void add( @Nonnull final SpillingCollector collector, @Nonnull final List<Report> reports )
+  {
+    for ( final Report report : reports )
+    {
+      collector.add( report, report.getDifferences() );
+    }
+  }
+
+  /**
+   * Return a description of every field of each record in the order the records are iterated.
+   */
+  @Nonnull
+  private static List<String> toList( @Nonnull final SpillingCollector collector )
+    throws IOException
+  {
+    final List<String> records = new ArrayList<>();
+    collector.forEach( record -> records.add( record.getCode() + '|' +
+                                              record.getDescription() + '|' +
+                                              record.getNewElement() + '|' +
+                                              record.getOldElement() + '|' +
+                                              record.isElementUnchanged() + '|' +
+                                              Arrays.toString( record.getClassification() ) + '|' +
+                                              Arrays.toString( record.getAttachments() ) ) );
+    return records;
+  }
+
+  /**
+   * Return the number of spilled runs in the temporary directory.
+   */
+  private static long countRuns()
+    throws IOException
+  {
+    try ( final Stream<Path> files = Files.list( Paths.get( System.getProperty( "java.io.tmpdir" ) ) ) )
+    {
+      return files.filter( f -> {
+        final String name = f.getFileName().toString();
+        return name.startsWith( "revapi-diff" ) && name.endsWith( ".run" );
+      } ).count();
+    }
+  }
+}
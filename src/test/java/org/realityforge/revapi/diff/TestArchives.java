@@ -0,0 +1,148 @@
+package org.realityforge.revapi.diff;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * Creates archives from java sources so that tests can compare apis without checked in binaries.
+ * The entries of an archive are written in a fixed order with a fixed timestamp so that the same sources
+ * produce the same archive.
+ */
+final class TestArchives
+{
+  private TestArchives()
+  {
+  }
+
+  /**
+   * Compile the sources into a jar.
+   *
+   * @param sources the source of each compilation unit keyed by the fully qualified name of its top-level class.
+   * @return the jar.
+   */
+  @Nonnull
+  static Path createJar( @Nonnull final Path jar, @Nonnull final Map<String, String> sources )
+    throws IOException
+  {
+    final Path classes = Files.createTempDirectory( "classes" );
+    try
+    {
+      compile( classes, sources );
+      writeJar( jar, classes );
+      return jar;
+    }
+    finally
+    {
+      delete( classes );
+    }
+  }
+
+  /**
+   * Delete the file or directory and all of its contents.
+   */
+  static void delete( @Nonnull final Path path )
+    throws IOException
+  {
+    if ( Files.exists( path ) )
+    {
+      try ( final Stream<Path> files = Files.walk( path ) )
+      {
+        for ( final Path file : files.sorted( Comparator.reverseOrder() ).collect( Collectors.toList() ) )
+        {
+          Files.delete( file );
+        }
+      }
+    }
+  }
+
+  private static void compile( @Nonnull final Path classes, @Nonnull final Map<String, String> sources )
+    throws IOException
+  {
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if ( null == compiler )
+    {
+      throw new IllegalStateException( "Tests must be run using a JDK" );
+    }
+    final List<JavaFileObject> units = new ArrayList<>();
+    for ( final Map.Entry<String, String> entry : sources.entrySet() )
+    {
+      units.add( new Source( entry.getKey(), entry.getValue() ) );
+    }
+    final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    try ( final StandardJavaFileManager fileManager = compiler.getStandardFileManager( diagnostics, null, null ) )
+    {
+      fileManager.setLocation( StandardLocation.CLASS_OUTPUT, Collections.singletonList( classes.toFile() ) );
+      final List<String> options = Collections.singletonList( "-proc:none" );
+      if ( !compiler.getTask( null, fileManager, diagnostics, options, null, units ).call() )
+      {
+        throw new IllegalStateException( "Failed to compile sources: " + diagnostics.getDiagnostics() );
+      }
+    }
+  }
+
+  private static void writeJar( @Nonnull final Path jar, @Nonnull final Path classes )
+    throws IOException
+  {
+    final Map<String, Path> entries = new TreeMap<>();
+    try ( final Stream<Path> files = Files.walk( classes ) )
+    {
+      for ( final Path file : files.filter( Files::isRegularFile ).collect( Collectors.toList() ) )
+      {
+        entries.put( classes.relativize( file ).toString().replace( '\\', '/' ), file );
+      }
+    }
+    try ( final OutputStream output = Files.newOutputStream( jar );
+          final JarOutputStream jarOutput = new JarOutputStream( output ) )
+    {
+      for ( final Map.Entry<String, Path> entry : entries.entrySet() )
+      {
+        final JarEntry jarEntry = new JarEntry( entry.getKey() );
+        jarEntry.setTime( 0 );
+        jarOutput.putNextEntry( jarEntry );
+        jarOutput.write( Files.readAllBytes( entry.getValue() ) );
+        jarOutput.closeEntry();
+      }
+    }
+  }
+
+  private static final class Source
+    extends SimpleJavaFileObject
+  {
+    @Nonnull
+    private final String _content;
+
+    Source( @Nonnull final String className, @Nonnull final String content )
+    {
+      super( URI.create( "string:///" + className.replace( '.', '/' ) + Kind.SOURCE.extension ), Kind.SOURCE );
+      _content = content;
+    }
+
+    @Nonnull
+    @Override
+    public CharSequence getCharContent( final boolean ignoreEncodingErrors )
+    {
+      return _content;
+    }
+  }
+}
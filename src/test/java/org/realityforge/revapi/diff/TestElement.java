@@ -0,0 +1,51 @@
+package org.realityforge.revapi.diff;
+
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.revapi.API;
+import org.revapi.Archive;
+import org.revapi.Element;
+import org.revapi.simple.SimpleElement;
+
+/**
+ * An element that renders as the supplied name, used to construct reports without performing an analysis.
+ */
+final class TestElement
+  extends SimpleElement
+{
+  @Nonnull
+  private final String _name;
+
+  TestElement( @Nonnull final String name )
+  {
+    _name = Objects.requireNonNull( name );
+  }
+
+  @Nullable
+  @Override
+  public API getApi()
+  {
+    return null;
+  }
+
+  @Nullable
+  @Override
+  public Archive getArchive()
+  {
+    return null;
+  }
+
+  @Override
+  public int compareTo( @Nonnull final Element other )
+  {
+    return _name.compareTo( other.getFullHumanReadableString() );
+  }
+
+  @Nonnull
+  @Override
+  public String toString()
+  {
+    return _name;
+  }
+}
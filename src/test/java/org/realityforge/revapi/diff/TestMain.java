@@ -0,0 +1,76 @@
+package org.realityforge.revapi.diff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+import static org.testng.Assert.*;
+
+/**
+ * Runs the tool in a separate process so that each run starts from the default options.
+ */
+final class TestMain
+{
+  private TestMain()
+  {
+  }
+
+  /**
+   * Run the tool with the specified arguments and the cache disabled.
+   *
+   * @return the output of the tool.
+   */
+  @Nonnull
+  static String run( final int expectedExitCode, @Nonnull final String... args )
+    throws IOException, InterruptedException
+  {
+    final List<String> command = new ArrayList<>();
+    command.add( Paths.get( System.getProperty( "java.home" ), "bin", "java" ).toString() );
+    command.add( "-cp" );
+    command.add( System.getProperty( "java.class.path" ) );
+    command.add( Main.class.getName() );
+    command.add( "--no-cache" );
+    command.addAll( Arrays.asList( args ) );
+    final Process process = new ProcessBuilder( command ).redirectErrorStream( true ).start();
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try ( final InputStream input = process.getInputStream() )
+    {
+      final byte[] buffer = new byte[ 8192 ];
+      int count;
+      while ( -1 != ( count = input.read( buffer ) ) )
+      {
+        output.write( buffer, 0, count );
+      }
+    }
+    final String text = new String( output.toByteArray(), StandardCharsets.UTF_8 );
+    assertEquals( process.waitFor(), expectedExitCode, text );
+    return text;
+  }
+
+  /**
+   * Compare the specified apis and return the output of the tool.
+   */
+  @Nonnull
+  static String compare( @Nonnull final Path oldApi,
+                         @Nonnull final Path newApi,
+                         @Nonnull final Path output,
+                         @Nonnull final String... args )
+    throws IOException, InterruptedException
+  {
+    final List<String> command = new ArrayList<>();
+    command.add( "--old-api" );
+    command.add( oldApi.toString() );
+    command.add( "--new-api" );
+    command.add( newApi.toString() );
+    command.add( "--output-file" );
+    command.add( output.toString() );
+    command.addAll( Arrays.asList( args ) );
+    return run( 0, command.toArray( new String[ 0 ] ) );
+  }
+}
@@ -0,0 +1,150 @@
+package org.realityforge.revapi.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nonnull;
+import org.revapi.CompatibilityType;
+import org.revapi.Difference;
+import org.revapi.DifferenceSeverity;
+import org.revapi.Report;
+
+/**
+ * Generates synthetic reports so that the collection and emission of differences can be tested without
+ * performing an analysis. The reports are determined by the seed of the random number generator.
+ */
+final class TestReports
+{
+  private static final String[] CODES =
+    { "java.class.added", "java.class.removed", "java.method.added", "java.method.removed",
+      "java.method.returnTypeChanged", "java.field.constantValueChanged", "java.class.nonPublicPartOfAPI" };
+  /**
+   * Strings that exercise the escaping of json strings, including characters outside the basic multilingual plane.
+   */
+  private static final String[] TEXT =
+    { "Method was added.", "Class was removed.", "a \"quoted\" value", "back\\slash", "line\nbreak", "tab\there",
+      "control\u0001char", "unicode \u00e9\u20ac\ud83d\ude00", "slash/and<angle>", "" };
+  private static final String[] ATTACHMENT_KEYS =
+    { "package", "classQualifiedName", "classSimpleName", "elementKind", "methodName", "newArchive",
+      "oldArchive", "exampleUseChainInNewApi", "exampleUseChainInOldApi" };
+  private static final String[] LARGE_API_CODES =
+    { "java.method.added", "java.method.removed", "java.method.returnTypeChanged", "java.field.removed",
+      "java.class.nonPublicPartOfAPI", "java.annotation.added" };
+  /**
+   * The maximum number of differences in each report of a large api.
+   */
+  private static final int MAX_DIFFERENCES_PER_REPORT = 4;
+
+  private TestReports()
+  {
+  }
+
+  /**
+   * Return the specified number of reports. Reports may have only a new element, only an old element or
+   * both, and both elements may render identically.
+   */
+  @Nonnull
+  static List<Report> generate( @Nonnull final Random random, final int count )
+  {
+    final List<Report> reports = new ArrayList<>( count );
+    for ( int i = 0; i < count; i++ )
+    {
+      final String name = "method void pkg" + random.nextInt( 10 ) + ".Type" + i + "::m(" + pick( random, TEXT ) + ")";
+      final int kind = random.nextInt( 4 );
+      final TestElement newElement = 1 == kind ? null : new TestElement( name );
+      final TestElement oldElement = 0 == kind ? null : new TestElement( 2 == kind ? name : name + "-old" );
+      final List<Difference> differences = new ArrayList<>();
+      final int differenceCount = 1 + random.nextInt( 4 );
+      for ( int j = 0; j < differenceCount; j++ )
+      {
+        differences.add( generateDifference( random ) );
+      }
+      reports.add( new Report( differences, oldElement, newElement ) );
+    }
+    return reports;
+  }
+
+  /**
+   * Return reports resembling those produced by analyzing large apis and containing the specified number of
+   * differences in total. The reports are shuffled as reports arrive from Revapi in no particular order.
+   * The benchmarks use these reports to measure the ordering and emission of reports.
+   */
+  @Nonnull
+  static List<Report> generateLargeApi( final int differenceCount, final long seed )
+  {
+    final Random random = new Random( seed );
+    final List<Report> reports = new ArrayList<>();
+    int remaining = differenceCount;
+    int index = 0;
+    while ( remaining > 0 )
+    {
+      final String className = "com.example.p" + ( index % 97 ) + ".Class" + ( index / 13 );
+      final String element = "method int " + className + "::m" + index + "(java.lang.String)";
+      final int count = Math.min( remaining, 1 + random.nextInt( MAX_DIFFERENCES_PER_REPORT ) );
+      final List<Difference> differences = new ArrayList<>( count );
+      for ( int i = 0; i < count; i++ )
+      {
+        differences.add( generateLargeApiDifference( random, className, index ) );
+      }
+      final int kind = random.nextInt( 3 );
+      reports.add( new Report( differences,
+                               0 == kind ? null : new TestElement( element ),
+                               1 == kind ? null : new TestElement( element ) ) );
+      remaining -= count;
+      index++;
+    }
+    Collections.shuffle( reports, random );
+    return reports;
+  }
+
+  @Nonnull
+  private static Difference generateLargeApiDifference( @Nonnull final Random random,
+                                                        @Nonnull final String className,
+                                                        final int index )
+  {
+    final String code = pick( random, LARGE_API_CODES );
+    final DifferenceSeverity[] severities = DifferenceSeverity.values();
+    return Difference.builder()
+      .withCode( code )
+      .withName( code.substring( code.lastIndexOf( '.' ) + 1 ) )
+      .withDescription( "The element m" + index + " of " + className + " has changed." )
+      .addClassification( CompatibilityType.BINARY, severities[ random.nextInt( severities.length ) ] )
+      .addClassification( CompatibilityType.SOURCE, severities[ random.nextInt( severities.length ) ] )
+      .addAttachment( "package", className.substring( 0, className.lastIndexOf( '.' ) ) )
+      .addAttachment( "classQualifiedName", className )
+      .addAttachment( "classSimpleName", className.substring( className.lastIndexOf( '.' ) + 1 ) )
+      .addAttachment( "elementKind", "method" )
+      .addAttachment( "methodName", "m" + index )
+      .build();
+  }
+
+  @Nonnull
+  private static Difference generateDifference( @Nonnull final Random random )
+  {
+    final Difference.Builder builder =
+      Difference.builder()
+        .withCode( pick( random, CODES ) )
+        .withName( "name" )
+        .withDescription( pick( random, TEXT ) );
+    for ( final CompatibilityType type : CompatibilityType.values() )
+    {
+      if ( random.nextBoolean() )
+      {
+        builder.addClassification( type, DifferenceSeverity.values()[ random.nextInt( DifferenceSeverity.values().length ) ] );
+      }
+    }
+    final int attachmentCount = random.nextInt( ATTACHMENT_KEYS.length );
+    for ( int i = 0; i < attachmentCount; i++ )
+    {
+      builder.addAttachment( pick( random, ATTACHMENT_KEYS ), pick( random, TEXT ) + random.nextInt( 3 ) );
+    }
+    return builder.build();
+  }
+
+  @Nonnull
+  private static String pick( @Nonnull final Random random, @Nonnull final String[] values )
+  {
+    return values[ random.nextInt( values.length ) ];
+  }
+}
@@ -0,0 +1,124 @@
+package org.realityforge.revapi.diff;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Verifies the names of the reports written by a timeline and the summary of the timeline.
+ */
+public final class TimelineTest
+{
+  @Test
+  public void reportNamesRetainFullLabels()
+  {
+    assertEquals( toReportName( 1, 3, "lib:1.0.1", "lib:1.0.2" ), "1-lib_1.0.1-to-lib_1.0.2" );
+    assertEquals( toReportName( 2, 3, "lib:1.0.2", "lib:1.0.3" ), "2-lib_1.0.2-to-lib_1.0.3" );
+    assertEquals( toReportName( 3, 12, "a/b.jar", "c\\d e.jar" ), "03-a_b.jar-to-c_d_e.jar" );
+  }
+
+  @Test
+  public void timeline()
+    throws Exception
+  {
+    final Path directory = Files.createTempDirectory( "timeline" );
+    try
+    {
+      final Path v1 = TestArchives.createJar( directory.resolve( "v1.jar" ),
+                                              Collections.singletonMap( "a.A",
+                                                                        "package a; public class A { public void m1() {} }" ) );
+      final Path v2 = TestArchives.createJar( directory.resolve( "v2.jar" ),
+                                              Collections.singletonMap( "a.A",
+                                                                        "package a; public class A { public void m2() {} }" ) );
+      final Path v3 =
+        TestArchives.createJar( directory.resolve( "v3.jar" ),
+                                Collections.singletonMap( "a.A",
+                                                          "package a; public class A { public void m2() {} public void m3() {} }" ) );
+      final Path summary = directory.resolve( "reports" ).resolve( "timeline.json" );
+      Files.createDirectories( summary.getParent() );
+      TestMain.run( 0,
+                    "--timeline",
+                    "--threads", "2",
+                    "--output-file", summary.toString(),
+                    "lib:1.0.1::" + v1,
+                    "lib:1.0.2::" + v2,
+                    "lib:1.0.3::" + v3 );
+
+      final String text = new String( Files.readAllBytes( summary ), StandardCharsets.UTF_8 );
+      // The summary is laid out like every other json file written by the tool
+      assertTrue( text.startsWith( "{\n  \"steps\": [\n    {\n      \"oldApi\": \"lib:1.0.1\",\n" ), text );
+      assertTrue( text.endsWith( "\n}\n" ), text );
+      final JsonObject object;
+      try ( final JsonReader reader = Json.createReader( new StringReader( text ) ) )
+      {
+        object = reader.readObject();
+      }
+      final JsonArray steps = object.getJsonArray( "steps" );
+      assertEquals( steps.size(), 2 );
+      assertStep( steps.getJsonObject( 0 ), "lib:1.0.1", "lib:1.0.2", "1-lib_1.0.1-to-lib_1.0.2.json", 2 );
+      assertStep( steps.getJsonObject( 1 ), "lib:1.0.2", "lib:1.0.3", "2-lib_1.0.2-to-lib_1.0.3.json", 1 );
+      for ( int i = 0; i < steps.size(); i++ )
+      {
+        final File report = summary.resolveSibling( steps.getJsonObject( i ).getString( "report" ) ).toFile();
+        assertTrue( report.exists(), report.toString() );
+      }
+      final JsonObject elements = object.getJsonObject( "elements" );
+      assertEquals( elements.size(), 3 );
+      for ( final String element : elements.keySet() )
+      {
+        final JsonObject change = elements.getJsonArray( element ).getJsonObject( 0 );
+        if ( element.contains( "m1" ) )
+        {
+          assertChange( change, "removed", "lib:1.0.2" );
+        }
+        else if ( element.contains( "m2" ) )
+        {
+          assertChange( change, "added", "lib:1.0.2" );
+        }
+        else
+        {
+          assertChange( change, "added", "lib:1.0.3" );
+        }
+      }
+    }
+    finally
+    {
+      TestArchives.delete( directory );
+    }
+  }
+
+  private static String toReportName( final int index, final int stepCount, final String oldLabel, final String newLabel )
+  {
+    return Timeline.toReportName( index,
+                                  stepCount,
+                                  new LabeledFileArchive( oldLabel, new File( "old.jar" ) ),
+                                  new LabeledFileArchive( newLabel, new File( "new.jar" ) ) );
+  }
+
+  private static void assertStep( final JsonObject step,
+                                  final String oldApi,
+                                  final String newApi,
+                                  final String report,
+                                  final int differences )
+  {
+    assertEquals( step.getString( "oldApi" ), oldApi );
+    assertEquals( step.getString( "newApi" ), newApi );
+    assertEquals( step.getString( "report" ), report );
+    assertEquals( step.getInt( "differences" ), differences );
+  }
+
+  private static void assertChange( final JsonObject change, final String type, final String api )
+  {
+    assertEquals( change.getString( "change" ), type );
+    assertEquals( change.getString( "api" ), api );
+  }
+}